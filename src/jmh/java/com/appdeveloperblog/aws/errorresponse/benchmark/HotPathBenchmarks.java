@@ -0,0 +1,149 @@
+package com.appdeveloperblog.aws.errorresponse.benchmark;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.appdeveloperblog.aws.errorresponse.ErrorResponse;
+import com.appdeveloperblog.aws.errorresponse.authorizer.AuthorizerOutput;
+import com.appdeveloperblog.aws.errorresponse.authorizer.AuthorizerPolicyFactory;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
+import com.appdeveloperblog.aws.errorresponse.shared.Constants;
+import com.appdeveloperblog.aws.errorresponse.shared.JsonCodec;
+import com.appdeveloperblog.aws.errorresponse.utils.AwsCognitoRSAKeyProvider;
+import com.appdeveloperblog.aws.errorresponse.utils.JwksKeyStore;
+import com.appdeveloperblog.aws.errorresponse.utils.JwtUtils;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro benchmarks of the code every request runs through, without any network access.
+ * <p>
+ * Run with {@code mvn -P benchmarks verify}; the gc profiler adds the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotPathBenchmarks {
+
+    private static final String REGION = "us-east-1";
+    private static final String USER_POOL_ID = "us-east-1_benchmark";
+    private static final String APP_CLIENT_ID = "benchmark-client";
+    private static final String KEY_ID = "benchmark-key";
+
+    private CognitoUserService cognitoUserService;
+    private String requestBody;
+    private JsonObject createUserResult;
+    private ErrorResponse errorResponse;
+    private JwtUtils jwtUtils;
+    private String idToken;
+    private AuthorizerPolicyFactory policyFactory;
+    private APIGatewayProxyRequestEvent.ProxyRequestContext proxyRequestContext;
+    private Map<String, String> authorizerContext;
+
+    @Setup
+    public void setUp() throws Exception {
+        // Only calculateSecretHash is used, which never touches the client
+        cognitoUserService = new CognitoUserService((CognitoIdentityProviderClient) null);
+
+        JsonObject userDetails = new JsonObject();
+        userDetails.addProperty("firstName", "Peacemaker");
+        userDetails.addProperty("lastName", "Smith");
+        userDetails.addProperty("email", "peacemaker@peace.com");
+        userDetails.addProperty("password", "baldyeagle");
+        userDetails.addProperty("username", "peacemaker");
+        requestBody = userDetails.toString();
+
+        createUserResult = new JsonObject();
+        createUserResult.addProperty(Constants.IS_SUCCESSFUL, true);
+        createUserResult.addProperty(Constants.STATUS_CODE, 200);
+        createUserResult.addProperty(Constants.COGNITO_USER_ID, UUID.randomUUID().toString());
+        createUserResult.addProperty(Constants.IS_CONFIRMED, false);
+
+        errorResponse = new ErrorResponse("User does not exist.");
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        JwksKeyStore.seed(
+                AwsCognitoRSAKeyProvider.getKeySetUrl(REGION, USER_POOL_ID),
+                Map.of(KEY_ID, (RSAPublicKey) keyPair.getPublic()));
+
+        jwtUtils = new JwtUtils();
+        idToken = JWT.create()
+                .withKeyId(KEY_ID)
+                .withIssuer("https://cognito-idp." + REGION + ".amazonaws.com/" + USER_POOL_ID)
+                .withSubject(UUID.randomUUID().toString())
+                .withAudience(APP_CLIENT_ID)
+                .withClaim("token_use", JwtUtils.TOKEN_USE_ID)
+                .withClaim("cognito:username", "peacemaker")
+                .withExpiresAt(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)))
+                .sign(Algorithm.RSA256((RSAPublicKey) keyPair.getPublic(), (RSAPrivateKey) keyPair.getPrivate()));
+
+        policyFactory = new AuthorizerPolicyFactory(AuthorizerPolicyFactory.PolicyMode.METHOD, List.of());
+        proxyRequestContext = new APIGatewayProxyRequestEvent.ProxyRequestContext()
+                .withAccountId("123456789012")
+                .withApiId("abcdef1234")
+                .withStage("Prod")
+                .withHttpMethod("GET");
+        authorizerContext = Map.of("sub", "benchmark", "username", "peacemaker");
+    }
+
+    @Benchmark
+    public String calculateSecretHash() {
+        return cognitoUserService.calculateSecretHash(APP_CLIENT_ID, "benchmark-client-secret", "peacemaker");
+    }
+
+    @Benchmark
+    public JsonObject parseRequestBody() {
+        return JsonParser.parseString(requestBody).getAsJsonObject();
+    }
+
+    @Benchmark
+    public String serializeJsonObject() {
+        return JsonCodec.toJson(createUserResult);
+    }
+
+    @Benchmark
+    public String serializeErrorResponse() {
+        return JsonCodec.toJson(errorResponse);
+    }
+
+    @Benchmark
+    public DecodedJWT verifyIdToken() {
+        return jwtUtils.validateIdToken(idToken, REGION, USER_POOL_ID, APP_CLIENT_ID);
+    }
+
+    @Benchmark
+    public AuthorizerOutput buildAuthorizerOutput() {
+        return AuthorizerOutput.builder()
+                .principalId("peacemaker")
+                .policyDocument(policyFactory.buildPolicyDocument(REGION, proxyRequestContext, "Allow"))
+                .context(authorizerContext)
+                .build();
+    }
+}
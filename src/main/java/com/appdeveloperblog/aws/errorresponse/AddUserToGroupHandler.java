@@ -1,39 +1,69 @@
 package com.appdeveloperblog.aws.errorresponse;
 
 import com.amazonaws.services.lambda.runtime.Context;
-import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.service.AwsClientFactory;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoThrottledException;
 import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
-import com.google.gson.Gson;
+import com.appdeveloperblog.aws.errorresponse.shared.InvocationMetrics;
+import com.appdeveloperblog.aws.errorresponse.shared.JsonCodec;
+import com.appdeveloperblog.aws.errorresponse.shared.Priming;
+import com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger;
+import com.appdeveloperblog.aws.errorresponse.shared.WarmUp;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import software.amazon.awssdk.awscore.exception.AwsServiceException;
 
+import java.util.Map;
+
 public class AddUserToGroupHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
     private final CognitoUserService cognitoUserService;
     private final String userPoolId;
 
+    public AddUserToGroupHandler(CognitoUserService cognitoUserService, String userPoolId) {
+        this.cognitoUserService = cognitoUserService;
+        this.userPoolId = userPoolId;
+    }
+
     public AddUserToGroupHandler() {
-        this.cognitoUserService = new CognitoUserService(System.getenv("AWS_REGION"));
+        Priming.register();
+        this.cognitoUserService = new CognitoUserService(AwsClientFactory.getCognitoClient());
         this.userPoolId = Utils.decryptKey("MY_COGNITO_USER_POOL_ID");
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent, Context context) {
 
+        if (WarmUp.isWarmUp(apiGatewayProxyRequestEvent)) {
+            return WarmUp.respond(context.getLogger(), "MY_COGNITO_USER_POOL_ID");
+        }
+
+        InvocationMetrics metrics = InvocationMetrics.start("AddUserToGroupHandler", context);
+        try {
+            return handle(apiGatewayProxyRequestEvent, context);
+        } finally {
+            metrics.emit(context.getLogger());
+        }
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent, Context context) {
+
         String username = apiGatewayProxyRequestEvent.getPathParameters().get("username");
 
         APIGatewayProxyResponseEvent responseEvent = new APIGatewayProxyResponseEvent();
-        LambdaLogger logger = context.getLogger();
+        StructuredLogger log = StructuredLogger.forRequest("AddUserToGroupHandler", context);
 
 
         try {
 
             String requestEventBody = apiGatewayProxyRequestEvent.getBody();
+            long parseStart = System.nanoTime();
             JsonObject requestEventJson = JsonParser.parseString(requestEventBody).getAsJsonObject();
+            InvocationMetrics.current().recordStage("Parse", parseStart);
+            log.debug("Request received", "body", requestEventJson);
 
             String groupName = requestEventJson.get("groupName").getAsString();
 
@@ -44,18 +74,38 @@ public class AddUserToGroupHandler implements RequestHandler<APIGatewayProxyRequ
 
             return responseEvent
                     .withStatusCode(200)
-                    .withBody(new Gson().fromJson(addUserToGroupResponse, JsonObject.class).toString());
+                    .withBody(JsonCodec.toJson(addUserToGroupResponse));
+
+        } catch (CognitoThrottledException throttledException) {
+            log.warn("Cognito request throttled", "retryAfterSeconds", throttledException.getRetryAfterSeconds());
+
+            ErrorResponse errorResponse = new ErrorResponse(throttledException.getMessage());
+
+            return responseEvent
+                    .withStatusCode(429)
+                    .withHeaders(Map.of("Content-Type", "application/json",
+                            "Retry-After", String.valueOf(throttledException.getRetryAfterSeconds())))
+                    .withBody(JsonCodec.toJson(errorResponse));
 
         } catch (AwsServiceException awsServiceException) {
-            logger.log(awsServiceException.awsErrorDetails().errorMessage());
+            log.error("Cognito request failed",
+                    "errorCode", awsServiceException.awsErrorDetails().errorCode(),
+                    "errorMessage", awsServiceException.awsErrorDetails().errorMessage());
+
+            ErrorResponse errorResponse = new ErrorResponse(awsServiceException.awsErrorDetails().errorMessage());
+
             return responseEvent
                     .withStatusCode(awsServiceException.awsErrorDetails().sdkHttpResponse().statusCode())
-                    .withBody(awsServiceException.awsErrorDetails().errorMessage());
+                    .withBody(JsonCodec.toJson(errorResponse));
+
         } catch (Exception e) {
-            logger.log(e.getMessage());
+            log.error("Request failed", "error", e);
+
+            ErrorResponse errorResponse = new ErrorResponse(e.getMessage());
+
             return responseEvent
                     .withStatusCode(500)
-                    .withBody(e.getMessage());
+                    .withBody(JsonCodec.toJson(errorResponse));
         }
 
     }
@@ -0,0 +1,114 @@
+package com.appdeveloperblog.aws.errorresponse;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.service.AwsClientFactory;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
+import com.appdeveloperblog.aws.errorresponse.service.GroupMembershipBatch;
+import com.appdeveloperblog.aws.errorresponse.shared.Constants;
+import com.appdeveloperblog.aws.errorresponse.shared.EnvironmentVariables;
+import com.appdeveloperblog.aws.errorresponse.shared.InvocationMetrics;
+import com.appdeveloperblog.aws.errorresponse.shared.JsonCodec;
+import com.appdeveloperblog.aws.errorresponse.shared.Priming;
+import com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger;
+import com.appdeveloperblog.aws.errorresponse.shared.WarmUp;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.util.Map;
+
+/**
+ * Batch variant of AddUserToGroupHandler. Expects a body such as
+ * {"memberships":[{"username":"...","groupName":"..."}, ...]} and reports a result per membership.
+ */
+public class BatchAddUserToGroupHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private final GroupMembershipBatch groupMembershipBatch;
+    private final String userPoolId;
+
+    public BatchAddUserToGroupHandler(GroupMembershipBatch groupMembershipBatch, String userPoolId) {
+        this.groupMembershipBatch = groupMembershipBatch;
+        this.userPoolId = userPoolId;
+    }
+
+    public BatchAddUserToGroupHandler() {
+        Priming.register();
+        this.groupMembershipBatch = new GroupMembershipBatch(
+                new CognitoUserService(AwsClientFactory.getCognitoClient()),
+                EnvironmentVariables.getInt("GROUP_BATCH_MAX_CONCURRENCY", 10));
+        this.userPoolId = Utils.decryptKey("MY_COGNITO_USER_POOL_ID");
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent, Context context) {
+
+        if (WarmUp.isWarmUp(apiGatewayProxyRequestEvent)) {
+            return WarmUp.respond(context.getLogger(), "MY_COGNITO_USER_POOL_ID");
+        }
+
+        InvocationMetrics metrics = InvocationMetrics.start("BatchAddUserToGroupHandler", context);
+        try {
+            return handle(apiGatewayProxyRequestEvent, context);
+        } finally {
+            metrics.emit(context.getLogger());
+        }
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent, Context context) {
+
+        APIGatewayProxyResponseEvent responseEvent = new APIGatewayProxyResponseEvent();
+        StructuredLogger log = StructuredLogger.forRequest("BatchAddUserToGroupHandler", context);
+
+        Map<String, String> headers = Map.of("Content-Type", "application/json");
+
+        try {
+
+            String requestEventBody = apiGatewayProxyRequestEvent.getBody();
+            long parseStart = System.nanoTime();
+            JsonObject requestEventJson = JsonParser.parseString(requestEventBody).getAsJsonObject();
+            InvocationMetrics.current().recordStage("Parse", parseStart);
+            log.debug("Request received", "body", requestEventJson);
+
+            JsonArray memberships = requestEventJson.getAsJsonArray("memberships");
+            if (memberships == null) {
+                throw new IllegalArgumentException("Missing memberships array");
+            }
+
+            JsonArray results = groupMembershipBatch.addUsersToGroups(memberships, userPoolId);
+
+            int failed = 0;
+            for (JsonElement result : results) {
+                if (!result.getAsJsonObject().get(Constants.IS_SUCCESSFUL).getAsBoolean()) {
+                    failed++;
+                }
+            }
+            log.info("Group memberships added", "succeeded", results.size() - failed, "total", results.size());
+
+            JsonObject batchResult = new JsonObject();
+            batchResult.addProperty("total", results.size());
+            batchResult.addProperty("succeeded", results.size() - failed);
+            batchResult.addProperty("failed", failed);
+            batchResult.add("results", results);
+
+            return responseEvent
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody(JsonCodec.toJson(batchResult));
+
+        } catch (Exception e) {
+            log.error("Request failed", "error", e);
+
+            ErrorResponse errorResponse = new ErrorResponse(e.getMessage());
+
+            return responseEvent
+                    .withStatusCode(500)
+                    .withHeaders(headers)
+                    .withBody(JsonCodec.toJson(errorResponse));
+        }
+
+    }
+}
@@ -0,0 +1,133 @@
+package com.appdeveloperblog.aws.errorresponse;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.service.AwsClientFactory;
+import com.appdeveloperblog.aws.errorresponse.service.BulkUserImporter;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
+import com.appdeveloperblog.aws.errorresponse.shared.Constants;
+import com.appdeveloperblog.aws.errorresponse.shared.EnvironmentVariables;
+import com.appdeveloperblog.aws.errorresponse.shared.InvocationMetrics;
+import com.appdeveloperblog.aws.errorresponse.shared.JsonCodec;
+import com.appdeveloperblog.aws.errorresponse.shared.Priming;
+import com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger;
+import com.appdeveloperblog.aws.errorresponse.shared.WarmUp;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Signs up many users in one request. The body is either NDJSON (one user object per line, the same
+ * fields CreateUserHandler accepts) or, with a text/csv Content-Type, CSV with a header row.
+ */
+public class BulkCreateUserHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private final BulkUserImporter bulkUserImporter;
+    private final String appClientId;
+    private final String appClientSecret;
+
+    public BulkCreateUserHandler(BulkUserImporter bulkUserImporter, String appClientId, String appClientSecret) {
+        this.bulkUserImporter = bulkUserImporter;
+        this.appClientId = appClientId;
+        this.appClientSecret = appClientSecret;
+    }
+
+    public BulkCreateUserHandler() {
+        Priming.register();
+        this.bulkUserImporter = new BulkUserImporter(
+                new CognitoUserService(AwsClientFactory.getCognitoClient()),
+                EnvironmentVariables.getInt("BULK_IMPORT_MAX_CONCURRENCY", 10));
+        this.appClientId = System.getenv("MY_COGNITO_POOL_APP_CLIENT_ID");
+        this.appClientSecret = System.getenv("MY_COGNITO_POOL_APP_CLIENT_SECRET");
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent, Context context) {
+
+        if (WarmUp.isWarmUp(apiGatewayProxyRequestEvent)) {
+            return WarmUp.respond(context.getLogger());
+        }
+
+        InvocationMetrics metrics = InvocationMetrics.start("BulkCreateUserHandler", context);
+        try {
+            return handle(apiGatewayProxyRequestEvent, context);
+        } finally {
+            metrics.emit(context.getLogger());
+        }
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent, Context context) {
+
+        APIGatewayProxyResponseEvent responseEvent = new APIGatewayProxyResponseEvent();
+        StructuredLogger log = StructuredLogger.forRequest("BulkCreateUserHandler", context);
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+
+        try {
+
+            String requestBody = apiGatewayProxyRequestEvent.getBody();
+            if (requestBody == null) {
+                throw new IllegalArgumentException("Request body is empty");
+            }
+
+            JsonArray results = new JsonArray();
+            AtomicInteger succeeded = new AtomicInteger();
+
+            int total = bulkUserImporter.importUsers(
+                    new StringReader(requestBody),
+                    getFormat(apiGatewayProxyRequestEvent.getHeaders()),
+                    appClientId,
+                    appClientSecret,
+                    result -> {
+                        if (result.get(Constants.IS_SUCCESSFUL).getAsBoolean()) {
+                            succeeded.incrementAndGet();
+                        }
+                        synchronized (results) {
+                            results.add(result);
+                        }
+                    });
+
+            log.info("Users imported", "succeeded", succeeded.get(), "total", total);
+
+            JsonObject bulkCreateUserResult = new JsonObject();
+            bulkCreateUserResult.addProperty("total", total);
+            bulkCreateUserResult.addProperty("succeeded", succeeded.get());
+            bulkCreateUserResult.addProperty("failed", total - succeeded.get());
+            bulkCreateUserResult.add("results", results);
+
+            return responseEvent
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody(JsonCodec.toJson(bulkCreateUserResult));
+
+        } catch (Exception e) {
+            log.error("Request failed", "error", e);
+
+            ErrorResponse errorResponse = new ErrorResponse(e.getMessage());
+
+            return responseEvent
+                    .withStatusCode(500)
+                    .withHeaders(headers)
+                    .withBody(JsonCodec.toJson(errorResponse));
+        }
+    }
+
+    private static BulkUserImporter.Format getFormat(Map<String, String> requestHeaders) {
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                if ("Content-Type".equalsIgnoreCase(header.getKey()) && header.getValue() != null
+                        && header.getValue().toLowerCase().startsWith("text/csv")) {
+                    return BulkUserImporter.Format.CSV;
+                }
+            }
+        }
+        return BulkUserImporter.Format.NDJSON;
+    }
+}
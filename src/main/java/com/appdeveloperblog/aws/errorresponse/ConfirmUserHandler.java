@@ -1,40 +1,74 @@
 package com.appdeveloperblog.aws.errorresponse;
 
 import com.amazonaws.services.lambda.runtime.Context;
-import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.service.AwsClientFactory;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoThrottledException;
 import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
-import com.google.gson.Gson;
+import com.appdeveloperblog.aws.errorresponse.shared.InvocationMetrics;
+import com.appdeveloperblog.aws.errorresponse.shared.JsonCodec;
+import com.appdeveloperblog.aws.errorresponse.shared.Priming;
+import com.appdeveloperblog.aws.errorresponse.shared.SecretsLoader;
+import com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger;
+import com.appdeveloperblog.aws.errorresponse.shared.WarmUp;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import software.amazon.awssdk.awscore.exception.AwsServiceException;
 
+import java.util.Map;
+
 public class ConfirmUserHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
     private final CognitoUserService cognitoUserService;
     private final String appClientId;
     private final String appClientSecret;
 
+    public ConfirmUserHandler(CognitoUserService cognitoUserService, String appClientId, String appClientSecret) {
+        this.cognitoUserService = cognitoUserService;
+        this.appClientId = appClientId;
+        this.appClientSecret = appClientSecret;
+    }
+
     public ConfirmUserHandler() {
-        this.cognitoUserService = new CognitoUserService(System.getenv("AWS_REGION"));
-        this.appClientId = Utils.decryptKey("MY_COGNITO_POOL_APP_CLIENT_ID");
-        this.appClientSecret = Utils.decryptKey("MY_COGNITO_POOL_APP_CLIENT_SECRET");
+        Priming.register();
+        this.cognitoUserService = new CognitoUserService(AwsClientFactory.getCognitoClient());
+        Map<String, String> secrets = SecretsLoader.shared()
+                .getAll("MY_COGNITO_POOL_APP_CLIENT_ID", "MY_COGNITO_POOL_APP_CLIENT_SECRET");
+        this.appClientId = secrets.get("MY_COGNITO_POOL_APP_CLIENT_ID");
+        this.appClientSecret = secrets.get("MY_COGNITO_POOL_APP_CLIENT_SECRET");
     }
 
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent, Context context) {
 
+        if (WarmUp.isWarmUp(apiGatewayProxyRequestEvent)) {
+            return WarmUp.respond(context.getLogger(), "MY_COGNITO_POOL_APP_CLIENT_ID", "MY_COGNITO_POOL_APP_CLIENT_SECRET");
+        }
+
+        InvocationMetrics metrics = InvocationMetrics.start("ConfirmUserHandler", context);
+        try {
+            return handle(apiGatewayProxyRequestEvent, context);
+        } finally {
+            metrics.emit(context.getLogger());
+        }
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent, Context context) {
+
         APIGatewayProxyResponseEvent responseEvent = new APIGatewayProxyResponseEvent();
-        LambdaLogger logger = context.getLogger();
+        StructuredLogger log = StructuredLogger.forRequest("ConfirmUserHandler", context);
 
 
         try {
 
             String requestEventBody = apiGatewayProxyRequestEvent.getBody();
+            long parseStart = System.nanoTime();
             JsonObject requestEventJson = JsonParser.parseString(requestEventBody).getAsJsonObject();
+            InvocationMetrics.current().recordStage("Parse", parseStart);
+            log.debug("Request received", "body", requestEventJson);
 
             String username = requestEventJson.get("username").getAsString();
             String confirmationCode = requestEventJson.get("code").getAsString();
@@ -47,18 +81,38 @@ public class ConfirmUserHandler implements RequestHandler<APIGatewayProxyRequest
 
             return responseEvent
                     .withStatusCode(200)
-                    .withBody(new Gson().fromJson(confirmUserSignUpResponse, JsonObject.class).toString());
+                    .withBody(JsonCodec.toJson(confirmUserSignUpResponse));
+
+        } catch (CognitoThrottledException throttledException) {
+            log.warn("Cognito request throttled", "retryAfterSeconds", throttledException.getRetryAfterSeconds());
+
+            ErrorResponse errorResponse = new ErrorResponse(throttledException.getMessage());
+
+            return responseEvent
+                    .withStatusCode(429)
+                    .withHeaders(Map.of("Content-Type", "application/json",
+                            "Retry-After", String.valueOf(throttledException.getRetryAfterSeconds())))
+                    .withBody(JsonCodec.toJson(errorResponse));
 
         } catch (AwsServiceException awsServiceException) {
-            logger.log(awsServiceException.awsErrorDetails().errorMessage());
+            log.error("Cognito request failed",
+                    "errorCode", awsServiceException.awsErrorDetails().errorCode(),
+                    "errorMessage", awsServiceException.awsErrorDetails().errorMessage());
+
+            ErrorResponse errorResponse = new ErrorResponse(awsServiceException.awsErrorDetails().errorMessage());
+
             return responseEvent
                     .withStatusCode(awsServiceException.awsErrorDetails().sdkHttpResponse().statusCode())
-                    .withBody(awsServiceException.awsErrorDetails().errorMessage());
+                    .withBody(JsonCodec.toJson(errorResponse));
+
         } catch (Exception e) {
-            logger.log(e.getMessage());
+            log.error("Request failed", "error", e);
+
+            ErrorResponse errorResponse = new ErrorResponse(e.getMessage());
+
             return responseEvent
                     .withStatusCode(500)
-                    .withBody(e.getMessage());
+                    .withBody(JsonCodec.toJson(errorResponse));
         }
 
 
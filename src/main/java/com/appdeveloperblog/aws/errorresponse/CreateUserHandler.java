@@ -1,13 +1,17 @@
 package com.appdeveloperblog.aws.errorresponse;
 
 import com.amazonaws.services.lambda.runtime.Context;
-import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.service.AwsClientFactory;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoThrottledException;
 import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.appdeveloperblog.aws.errorresponse.shared.InvocationMetrics;
+import com.appdeveloperblog.aws.errorresponse.shared.JsonCodec;
+import com.appdeveloperblog.aws.errorresponse.shared.Priming;
+import com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger;
+import com.appdeveloperblog.aws.errorresponse.shared.WarmUp;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import software.amazon.awssdk.awscore.exception.AwsServiceException;
@@ -28,7 +32,8 @@ public class CreateUserHandler implements RequestHandler<APIGatewayProxyRequestE
     }
 
     public CreateUserHandler() {
-        this.cognitoUserService = new CognitoUserService(System.getenv("AWS_REGION"));
+        Priming.register();
+        this.cognitoUserService = new CognitoUserService(AwsClientFactory.getCognitoClient());
         this.appClientId = System.getenv("MY_COGNITO_POOL_APP_CLIENT_ID");
         this.appClientSecret = System.getenv("MY_COGNITO_POOL_APP_CLIENT_SECRET");
 
@@ -37,11 +42,25 @@ public class CreateUserHandler implements RequestHandler<APIGatewayProxyRequestE
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent, Context context) {
 
+        if (WarmUp.isWarmUp(apiGatewayProxyRequestEvent)) {
+            return WarmUp.respond(context.getLogger());
+        }
+
+        InvocationMetrics metrics = InvocationMetrics.start("CreateUserHandler", context);
+        try {
+            return handle(apiGatewayProxyRequestEvent, context);
+        } finally {
+            metrics.emit(context.getLogger());
+        }
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent, Context context) {
+
         // API Response
         APIGatewayProxyResponseEvent responseEvent = new APIGatewayProxyResponseEvent();
 
         // Logger
-        LambdaLogger logger = context.getLogger();
+        StructuredLogger log = StructuredLogger.forRequest("CreateUserHandler", context);
 
         // Headers
         Map<String, String> headers = new HashMap<>();
@@ -49,7 +68,6 @@ public class CreateUserHandler implements RequestHandler<APIGatewayProxyRequestE
 
         // Request body with HTTP Post payload containing user details
         String requestBody = apiGatewayProxyRequestEvent.getBody();
-        logger.log("Original JSON request body: " + requestBody);
 
         // Parse request body into JSON object
 
@@ -57,17 +75,34 @@ public class CreateUserHandler implements RequestHandler<APIGatewayProxyRequestE
 
         try {
 
+            long parseStart = System.nanoTime();
             userDetails = JsonParser.parseString(requestBody).getAsJsonObject();
+            InvocationMetrics.current().recordStage("Parse", parseStart);
+            log.debug("Request received", "body", userDetails);
 
             JsonObject createUserResult = cognitoUserService.createUser(userDetails, appClientId, appClientSecret);
             responseEvent
                     .withStatusCode(200)
                     .withHeaders(headers)
-                    .withBody(new Gson().toJson(createUserResult, JsonObject.class));
+                    .withBody(JsonCodec.toJson(createUserResult));
+
+        } catch (CognitoThrottledException throttledException) {
+            log.warn("Cognito request throttled", "retryAfterSeconds", throttledException.getRetryAfterSeconds());
+
+            ErrorResponse errorResponse = new ErrorResponse(throttledException.getMessage());
+
+            headers.put("Retry-After", String.valueOf(throttledException.getRetryAfterSeconds()));
+
+            return responseEvent
+                    .withStatusCode(429)
+                    .withHeaders(headers)
+                    .withBody(JsonCodec.toJson(errorResponse));
 
         } catch (AwsServiceException awsServiceException) {
 
-            logger.log(awsServiceException.awsErrorDetails().errorMessage());
+            log.error("Cognito request failed",
+                    "errorCode", awsServiceException.awsErrorDetails().errorCode(),
+                    "errorMessage", awsServiceException.awsErrorDetails().errorMessage());
 
             ErrorResponse errorResponse = new ErrorResponse(awsServiceException.awsErrorDetails().errorMessage());
 
@@ -75,22 +110,17 @@ public class CreateUserHandler implements RequestHandler<APIGatewayProxyRequestE
             responseEvent
                     .withStatusCode(500)
                     .withHeaders(headers)
-                    .withBody(new Gson().toJson(errorResponse, ErrorResponse.class));
+                    .withBody(JsonCodec.toJson(errorResponse));
 
         } catch (Exception e) {
-            logger.log(e.getMessage());
+            log.error("Request failed", "error", e);
 
             ErrorResponse errorResponse = new ErrorResponse(e.getMessage());
 
 
             return responseEvent
                     .withStatusCode(500)
-                    .withBody(
-                            new GsonBuilder()
-                                    .serializeNulls()
-                                    .create()
-                                    .toJson(errorResponse, ErrorResponse.class)
-                    );
+                    .withBody(JsonCodec.toJson(errorResponse));
         }
 
 
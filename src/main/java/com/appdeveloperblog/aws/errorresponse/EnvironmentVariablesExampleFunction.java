@@ -1,18 +1,16 @@
 package com.appdeveloperblog.aws.errorresponse;
 
-import com.amazonaws.services.kms.AWSKMS;
-import com.amazonaws.services.kms.AWSKMSClientBuilder;
-import com.amazonaws.services.kms.model.DecryptRequest;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
-import com.amazonaws.util.Base64;
+import com.appdeveloperblog.aws.errorresponse.service.AwsClientFactory;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.kms.model.DecryptRequest;
 
-import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
@@ -55,19 +53,17 @@ public class EnvironmentVariablesExampleFunction implements RequestHandler<APIGa
 
     private String decryptKey(String envVariableName) {
         System.out.println("Decrypting key");
-        byte[] encryptedKey = Base64.decode(System.getenv(envVariableName));
+        byte[] encryptedKey = Base64.getDecoder().decode(System.getenv(envVariableName));
         Map<String, String> encryptionContext = new HashMap<>();
         encryptionContext.put("LambdaFunctionName",
                 System.getenv("AWS_LAMBDA_FUNCTION_NAME"));
 
-        AWSKMS client = AWSKMSClientBuilder.defaultClient();
+        DecryptRequest request = DecryptRequest.builder()
+                .ciphertextBlob(SdkBytes.fromByteArray(encryptedKey))
+                .encryptionContext(encryptionContext)
+                .build();
 
-        DecryptRequest request = new DecryptRequest()
-                .withCiphertextBlob(ByteBuffer.wrap(encryptedKey))
-                .withEncryptionContext(encryptionContext);
-
-        ByteBuffer plainTextKey = client.decrypt(request).getPlaintext();
-        return new String(plainTextKey.array(), Charset.forName("UTF-8"));
+        return AwsClientFactory.getKmsClient().decrypt(request).plaintext().asUtf8String();
     }
 
 }
\ No newline at end of file
@@ -4,38 +4,101 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.service.AwsClientFactory;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoThrottledException;
 import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
-import com.google.gson.Gson;
+import com.appdeveloperblog.aws.errorresponse.shared.AuthorizerContext;
+import com.appdeveloperblog.aws.errorresponse.shared.InvocationMetrics;
+import com.appdeveloperblog.aws.errorresponse.shared.JsonCodec;
+import com.appdeveloperblog.aws.errorresponse.shared.Priming;
+import com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger;
+import com.appdeveloperblog.aws.errorresponse.shared.WarmUp;
 import com.google.gson.JsonObject;
 
 import java.util.Map;
 
+import static com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger.lazy;
+
+/**
+ * Returns the attributes of the user named in the path. With USER_FROM_AUTHORIZER_CONTEXT=true a user looking
+ * themselves up is answered from the claims LambdaAuthorizer verified; see {@link AuthorizerContext} for the
+ * attributes returned then.
+ */
 public class GetUserByUsernameHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
     private final CognitoUserService cognitoUserService;
+    private final boolean useAuthorizerContext;
+
+    public GetUserByUsernameHandler(CognitoUserService cognitoUserService, boolean useAuthorizerContext) {
+        this.cognitoUserService = cognitoUserService;
+        this.useAuthorizerContext = useAuthorizerContext;
+    }
 
     public GetUserByUsernameHandler() {
-        this.cognitoUserService = new CognitoUserService(System.getenv("AWS_REGION"));
+        Priming.register();
+        this.cognitoUserService = new CognitoUserService(AwsClientFactory.getCognitoClient());
+        this.useAuthorizerContext = AuthorizerContext.isEnabled();
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(final APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent,
                                                       final Context context) {
 
+        if (WarmUp.isWarmUp(apiGatewayProxyRequestEvent)) {
+            return WarmUp.respond(context.getLogger());
+        }
+
+        InvocationMetrics metrics = InvocationMetrics.start("GetUserByUsernameHandler", context);
+        try {
+            return handle(apiGatewayProxyRequestEvent, context);
+        } finally {
+            metrics.emit(context.getLogger());
+        }
+    }
+
+    private APIGatewayProxyResponseEvent handle(final APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent,
+                                                final Context context) {
+
         APIGatewayProxyResponseEvent responseEvent = new APIGatewayProxyResponseEvent();
+        StructuredLogger log = StructuredLogger.forRequest("GetUserByUsernameHandler", context);
         responseEvent.withHeaders(Map.of("Content-Type", "application/json"));
 
         String username = apiGatewayProxyRequestEvent.getPathParameters().get("username");
         String poolId = System.getenv("PHOTO_APP_USERS_POOL_ID");
 
         try {
-            JsonObject userDetails = cognitoUserService.getUserByUsername(username, poolId);
+            JsonObject userDetails = null;
+
+            if (useAuthorizerContext) {
+                // Self lookup: the authorizer already verified this user's claims
+                Map<String, Object> authorizer = AuthorizerContext.getAuthorizer(apiGatewayProxyRequestEvent);
+                if (username != null && username.equals(AuthorizerContext.getUsername(authorizer))) {
+                    userDetails = AuthorizerContext.getUserAttributes(authorizer);
+                }
+            }
+
+            if (userDetails == null) {
+                userDetails = cognitoUserService.getUserByUsername(username, poolId);
+                log.debug("User cache", "stats", lazy(cognitoUserService::getUserCacheStats));
+            }
             responseEvent
                     .withStatusCode(200)
-                    .withBody(new Gson().toJson(userDetails, JsonObject.class));
+                    .withBody(JsonCodec.toJson(userDetails));
+
+        } catch (CognitoThrottledException throttledException) {
+            log.warn("Cognito request throttled", "retryAfterSeconds", throttledException.getRetryAfterSeconds());
+
+            ErrorResponse errorResponse = new ErrorResponse(throttledException.getMessage());
+
+            return responseEvent
+                    .withStatusCode(429)
+                    .withHeaders(Map.of("Content-Type", "application/json",
+                            "Retry-After", String.valueOf(throttledException.getRetryAfterSeconds())))
+                    .withBody(JsonCodec.toJson(errorResponse));
 
         } catch (Exception e) {
-            responseEvent.withBody("{\"message\":\"" + e.getMessage() + "\"}");
+            log.error("Request failed", "error", e);
+            responseEvent.withBody(JsonCodec.toJson(new ErrorResponse(e.getMessage())));
             responseEvent.withStatusCode(500);
         }
 
@@ -1,72 +1,129 @@
 package com.appdeveloperblog.aws.errorresponse;
 
 import com.amazonaws.services.lambda.runtime.Context;
-import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.service.AwsClientFactory;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoThrottledException;
 import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.appdeveloperblog.aws.errorresponse.shared.AuthorizerContext;
+import com.appdeveloperblog.aws.errorresponse.shared.Constants;
+import com.appdeveloperblog.aws.errorresponse.shared.InvocationMetrics;
+import com.appdeveloperblog.aws.errorresponse.shared.JsonCodec;
+import com.appdeveloperblog.aws.errorresponse.shared.Priming;
+import com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger;
+import com.appdeveloperblog.aws.errorresponse.shared.WarmUp;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import software.amazon.awssdk.awscore.exception.AwsServiceException;
 
 import java.util.Map;
 
+import static com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger.lazy;
+
+/**
+ * Returns the user the AccessToken header was issued to, in the shape of {@code CognitoUserService.getUser}.
+ * With USER_FROM_AUTHORIZER_CONTEXT=true the user comes from the claims LambdaAuthorizer verified when the access
+ * token belongs to that same user; see {@link AuthorizerContext} for the attributes returned then.
+ */
 public class GetUserHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
     private final CognitoUserService cognitoUserService;
+    private final boolean useAuthorizerContext;
+
+    public GetUserHandler(CognitoUserService cognitoUserService, boolean useAuthorizerContext) {
+        this.cognitoUserService = cognitoUserService;
+        this.useAuthorizerContext = useAuthorizerContext;
+    }
 
     public GetUserHandler() {
-        this.cognitoUserService = new CognitoUserService(System.getenv("AWS_REGION"));
+        Priming.register();
+        this.cognitoUserService = new CognitoUserService(AwsClientFactory.getCognitoClient());
+        this.useAuthorizerContext = AuthorizerContext.isEnabled();
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent, Context context) {
 
+        if (WarmUp.isWarmUp(apiGatewayProxyRequestEvent)) {
+            return WarmUp.respond(context.getLogger());
+        }
+
+        InvocationMetrics metrics = InvocationMetrics.start("GetUserHandler", context);
+        try {
+            return handle(apiGatewayProxyRequestEvent, context);
+        } finally {
+            metrics.emit(context.getLogger());
+        }
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent, Context context) {
+
         APIGatewayProxyResponseEvent responseEvent = new APIGatewayProxyResponseEvent();
-        LambdaLogger logger = context.getLogger();
+        StructuredLogger log = StructuredLogger.forRequest("GetUserHandler", context);
 
         try {
 
             Map<String, String> requestHeaders = apiGatewayProxyRequestEvent.getHeaders();
-            String accessToken = requestHeaders.get("AccessToken");
-
-            JsonObject getUserResult = cognitoUserService.getUser(accessToken);
+            String accessToken = requestHeaders != null ? requestHeaders.get("AccessToken") : null;
+            JsonObject getUserResult = null;
+
+            if (useAuthorizerContext) {
+                // Claims already verified by LambdaAuthorizer, no need to ask Cognito again, as long as the
+                // access token is the authorized user's own
+                Map<String, Object> authorizer = AuthorizerContext.getAuthorizer(apiGatewayProxyRequestEvent);
+                JsonObject userAttributes = AuthorizerContext.isAccessTokenOf(authorizer, accessToken)
+                        ? AuthorizerContext.getUserAttributes(authorizer)
+                        : null;
+                if (userAttributes != null) {
+                    getUserResult = new JsonObject();
+                    getUserResult.addProperty(Constants.IS_SUCCESSFUL, true);
+                    getUserResult.addProperty(Constants.STATUS_CODE, 200);
+                    getUserResult.add("user", userAttributes);
+                }
+            }
+
+            if (getUserResult == null) {
+                getUserResult = cognitoUserService.getUser(accessToken);
+                log.debug("Access token cache", "stats", lazy(cognitoUserService::getAccessTokenCacheStats));
+            }
 
             return responseEvent
                     .withStatusCode(200)
                     .withHeaders(Map.of("Content-Type", "application/json"))
-                    .withBody(new Gson().toJson(getUserResult, JsonObject.class).toString());
+                    .withBody(JsonCodec.toJson(getUserResult));
+
+        } catch (CognitoThrottledException throttledException) {
+            log.warn("Cognito request throttled", "retryAfterSeconds", throttledException.getRetryAfterSeconds());
+
+            ErrorResponse errorResponse = new ErrorResponse(throttledException.getMessage());
+
+            return responseEvent
+                    .withStatusCode(429)
+                    .withHeaders(Map.of("Content-Type", "application/json",
+                            "Retry-After", String.valueOf(throttledException.getRetryAfterSeconds())))
+                    .withBody(JsonCodec.toJson(errorResponse));
 
         } catch (AwsServiceException awsServiceException) {
-            logger.log(awsServiceException.awsErrorDetails().errorMessage());
+            log.error("Cognito request failed",
+                    "errorCode", awsServiceException.awsErrorDetails().errorCode(),
+                    "errorMessage", awsServiceException.awsErrorDetails().errorMessage());
 
             ErrorResponse errorResponse = new ErrorResponse(awsServiceException.awsErrorDetails().errorMessage());
 
             return responseEvent
                     .withStatusCode(awsServiceException.awsErrorDetails().sdkHttpResponse().statusCode())
-                    .withBody(
-                            new GsonBuilder()
-                                    .serializeNulls()
-                                    .create()
-                                    .toJson(errorResponse, ErrorResponse.class)
-                    );
+                    .withBody(JsonCodec.toJson(errorResponse));
 
         } catch (Exception e) {
-            logger.log(e.getMessage());
+            log.error("Request failed", "error", e);
 
             ErrorResponse errorResponse = new ErrorResponse(e.getMessage());
 
             return responseEvent
                     .withStatusCode(500)
-                    .withBody(
-                            new GsonBuilder()
-                                    .serializeNulls()
-                                    .create()
-                                    .toJson(errorResponse, ErrorResponse.class)
-                    );
+                    .withBody(JsonCodec.toJson(errorResponse));
         }
     }
 }
@@ -1,13 +1,18 @@
 package com.appdeveloperblog.aws.errorresponse;
 
 import com.amazonaws.services.lambda.runtime.Context;
-import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.service.AwsClientFactory;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoThrottledException;
 import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.appdeveloperblog.aws.errorresponse.shared.InvocationMetrics;
+import com.appdeveloperblog.aws.errorresponse.shared.JsonCodec;
+import com.appdeveloperblog.aws.errorresponse.shared.Priming;
+import com.appdeveloperblog.aws.errorresponse.shared.SecretsLoader;
+import com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger;
+import com.appdeveloperblog.aws.errorresponse.shared.WarmUp;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import software.amazon.awssdk.awscore.exception.AwsServiceException;
@@ -21,18 +26,41 @@ public class LoginUserHandler implements RequestHandler<APIGatewayProxyRequestEv
     private final String appClientId;
     private final String appClientSecret;
 
+    public LoginUserHandler(CognitoUserService cognitoUserService, String appClientId, String appClientSecret) {
+        this.cognitoUserService = cognitoUserService;
+        this.appClientId = appClientId;
+        this.appClientSecret = appClientSecret;
+    }
+
     public LoginUserHandler() {
-        this.cognitoUserService = new CognitoUserService(System.getenv("AWS_REGION"));
-        this.appClientId = Utils.decryptKey("MY_COGNITO_POOL_APP_CLIENT_ID");
-        this.appClientSecret = Utils.decryptKey("MY_COGNITO_POOL_APP_CLIENT_SECRET");
+        Priming.register();
+        this.cognitoUserService = new CognitoUserService(AwsClientFactory.getCognitoClient());
+        Map<String, String> secrets = SecretsLoader.shared()
+                .getAll("MY_COGNITO_POOL_APP_CLIENT_ID", "MY_COGNITO_POOL_APP_CLIENT_SECRET");
+        this.appClientId = secrets.get("MY_COGNITO_POOL_APP_CLIENT_ID");
+        this.appClientSecret = secrets.get("MY_COGNITO_POOL_APP_CLIENT_SECRET");
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent, Context context) {
 
+        if (WarmUp.isWarmUp(apiGatewayProxyRequestEvent)) {
+            return WarmUp.respond(context.getLogger(), "MY_COGNITO_POOL_APP_CLIENT_ID", "MY_COGNITO_POOL_APP_CLIENT_SECRET");
+        }
+
+        InvocationMetrics metrics = InvocationMetrics.start("LoginUserHandler", context);
+        try {
+            return handle(apiGatewayProxyRequestEvent, context);
+        } finally {
+            metrics.emit(context.getLogger());
+        }
+    }
+
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent apiGatewayProxyRequestEvent, Context context) {
+
         APIGatewayProxyResponseEvent responseEvent = new APIGatewayProxyResponseEvent();
 
-        LambdaLogger logger = context.getLogger();
+        StructuredLogger log = StructuredLogger.forRequest("LoginUserHandler", context);
 
         Map<String, String> headers = new HashMap<>();
 
@@ -40,7 +68,10 @@ public class LoginUserHandler implements RequestHandler<APIGatewayProxyRequestEv
 
         try {
 
+            long parseStart = System.nanoTime();
             JsonObject requestBodyJson = JsonParser.parseString(apiGatewayProxyRequestEvent.getBody()).getAsJsonObject();
+            InvocationMetrics.current().recordStage("Parse", parseStart);
+            log.debug("Request received", "body", requestBodyJson);
 
             String username = requestBodyJson.get("username").getAsString();
             String password = requestBodyJson.get("password").getAsString();
@@ -51,35 +82,39 @@ public class LoginUserHandler implements RequestHandler<APIGatewayProxyRequestEv
             return responseEvent
                     .withStatusCode(200)
                     .withHeaders(headers)
-                    .withBody(new Gson().toJson(loginUserResult, JsonObject.class));
+                    .withBody(JsonCodec.toJson(loginUserResult));
+
+        } catch (CognitoThrottledException throttledException) {
+            log.warn("Cognito request throttled", "retryAfterSeconds", throttledException.getRetryAfterSeconds());
+
+            ErrorResponse errorResponse = new ErrorResponse(throttledException.getMessage());
+
+            headers.put("Retry-After", String.valueOf(throttledException.getRetryAfterSeconds()));
+
+            return responseEvent
+                    .withStatusCode(429)
+                    .withHeaders(headers)
+                    .withBody(JsonCodec.toJson(errorResponse));
 
         } catch (AwsServiceException awsServiceException) {
-            logger.log(awsServiceException.awsErrorDetails().errorMessage());
+            log.error("Cognito request failed",
+                    "errorCode", awsServiceException.awsErrorDetails().errorCode(),
+                    "errorMessage", awsServiceException.awsErrorDetails().errorMessage());
 
             ErrorResponse errorResponse = new ErrorResponse(awsServiceException.awsErrorDetails().errorMessage());
 
             return responseEvent
                     .withStatusCode(awsServiceException.awsErrorDetails().sdkHttpResponse().statusCode())
-                    .withBody(
-                            new GsonBuilder()
-                                    .serializeNulls()
-                                    .create()
-                                    .toJson(errorResponse, ErrorResponse.class)
-                    );
+                    .withBody(JsonCodec.toJson(errorResponse));
 
         } catch (Exception e) {
-            logger.log(e.getMessage());
+            log.error("Request failed", "error", e);
 
             ErrorResponse errorResponse = new ErrorResponse(e.getMessage());
 
             return responseEvent
                     .withStatusCode(500)
-                    .withBody(
-                            new GsonBuilder()
-                                    .serializeNulls()
-                                    .create()
-                                    .toJson(errorResponse, ErrorResponse.class)
-                    );
+                    .withBody(JsonCodec.toJson(errorResponse));
         }
 
     }
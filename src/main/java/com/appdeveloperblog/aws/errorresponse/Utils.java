@@ -1,34 +1,11 @@
 package com.appdeveloperblog.aws.errorresponse;
 
-import com.amazonaws.services.kms.AWSKMS;
-import com.amazonaws.services.kms.AWSKMSClientBuilder;
-import com.amazonaws.services.kms.model.DecryptRequest;
-import com.amazonaws.services.lambda.runtime.LambdaLogger;
-import com.amazonaws.util.Base64;
-
-import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
-import java.util.Arrays;
+import com.appdeveloperblog.aws.errorresponse.shared.SecretsLoader;
 
 public class Utils {
 
     public static String decryptKey(String envVariableName) {
-        System.out.println("Decrypting key");
-        byte[] encryptedKey = Base64.decode(System.getenv(envVariableName));
-//        Map<String, String> encryptionContext = new HashMap<>();
-//        encryptionContext.put("LambdaFunctionName",
-//                System.getenv("AWS_LAMBDA_FUNCTION_NAME"));
-
-
-        AWSKMS client = AWSKMSClientBuilder.defaultClient();
-
-        DecryptRequest request = new DecryptRequest()
-                .withCiphertextBlob(ByteBuffer.wrap(encryptedKey));
-//                .withEncryptionContext(encryptionContext);
-
-
-        ByteBuffer plainTextKey = client.decrypt(request).getPlaintext();
-        return new String(plainTextKey.array(), Charset.forName("UTF-8"));
-
+        // Decrypted once per container and memoized
+        return SecretsLoader.shared().get(envVariableName);
     }
-}
\ No newline at end of file
+}
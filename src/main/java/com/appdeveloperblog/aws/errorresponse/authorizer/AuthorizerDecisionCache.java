@@ -0,0 +1,123 @@
+package com.appdeveloperblog.aws.errorresponse.authorizer;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded cache of authorizer decisions keyed by the SHA-256 digest of the bearer token.
+ * Allow decisions never outlive the token's exp claim; Deny decisions are kept for at most
+ * the configured deny TTL so a rejected token is not re-verified on every retry.
+ */
+public class AuthorizerDecisionCache {
+
+    private final Cache<String, Decision> decisions;
+    private final Duration maximumTtl;
+    private final Duration denyTtl;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public AuthorizerDecisionCache(long maximumSize, Duration maximumTtl, Duration denyTtl) {
+        this.decisions = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(maximumTtl.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        this.maximumTtl = maximumTtl;
+        this.denyTtl = denyTtl;
+    }
+
+    public Decision get(String jwt) {
+        if (jwt == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        String key = digest(jwt);
+        Decision decision = decisions.getIfPresent(key);
+        if (decision != null && decision.expiresAtMillis <= System.currentTimeMillis()) {
+            decisions.invalidate(key);
+            decision = null;
+        }
+
+        if (decision == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return decision;
+    }
+
+    public Decision putAllow(String jwt, String principalId, Date expiresAt, Map<String, String> context) {
+        long expiresAtMillis = expiresAt != null
+                ? expiresAt.getTime()
+                : System.currentTimeMillis() + maximumTtl.toMillis();
+        Decision decision = new Decision(principalId, "Allow", expiresAtMillis, Map.copyOf(context));
+        decisions.put(digest(jwt), decision);
+        return decision;
+    }
+
+    public Decision putDeny(String jwt) {
+        Decision decision = new Decision(null, "Deny", System.currentTimeMillis() + denyTtl.toMillis(), Map.of());
+        if (jwt != null) {
+            decisions.put(digest(jwt), decision);
+        }
+        return decision;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long size() {
+        return decisions.size();
+    }
+
+    public void clear() {
+        decisions.invalidateAll();
+    }
+
+    private static String digest(String jwt) {
+        return Hashing.sha256().hashString(jwt, StandardCharsets.UTF_8).toString();
+    }
+
+    public static final class Decision {
+        private final String principalId;
+        private final String effect;
+        private final long expiresAtMillis;
+        private final Map<String, String> context;
+
+        private Decision(String principalId, String effect, long expiresAtMillis, Map<String, String> context) {
+            this.principalId = principalId;
+            this.effect = effect;
+            this.expiresAtMillis = expiresAtMillis;
+            this.context = context;
+        }
+
+        public String getPrincipalId() {
+            return principalId;
+        }
+
+        public String getEffect() {
+            return effect;
+        }
+
+        public long getExpiresAtMillis() {
+            return expiresAtMillis;
+        }
+
+        public Map<String, String> getContext() {
+            return context;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.appdeveloperblog.aws.errorresponse.authorizer;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the policy document returned by {@link LambdaAuthorizer}.
+ * <p>
+ * In {@link PolicyMode#METHOD} mode the policy only covers the HTTP method of the current request,
+ * which is what the authorizer has always returned. In {@link PolicyMode#API} mode the policy covers
+ * every route the principal is entitled to on the stage, so API Gateway can reuse a cached authorizer
+ * result for all subsequent calls made with the same token.
+ * <p>
+ * The entitlements are per principal: every authenticated user gets the routes of
+ * AUTHORIZER_ALLOWED_ROUTES, and a member of a Cognito group listed in AUTHORIZER_GROUP_ROUTES gets that
+ * group's routes as well. A principal left without any route gets a Deny for the whole API. Documents are
+ * cached per entitlement set, so users with the same groups share one instance.
+ */
+public class AuthorizerPolicyFactory {
+
+    public enum PolicyMode {
+        METHOD, API
+    }
+
+    public static final String POLICY_MODE_ENV = "AUTHORIZER_POLICY_MODE";
+    public static final String ALLOWED_ROUTES_ENV = "AUTHORIZER_ALLOWED_ROUTES";
+    public static final String GROUP_ROUTES_ENV = "AUTHORIZER_GROUP_ROUTES";
+
+    private static final String ALL_ROUTES = "*/*";
+
+    // A handful per deployed API; the bound only guards against unexpected request contexts
+    static final int MAX_CACHED_DOCUMENTS = 1_000;
+
+    private static final PolicyDocument DENY_ALL = PolicyDocument.builder()
+            .version("2012-10-17")
+            .statements(List.of(Statement.builder()
+                    .action("execute-api:Invoke")
+                    .effect("Deny")
+                    .resource("arn:aws:execute-api:*:*:*")
+                    .build()))
+            .build();
+
+    private final PolicyMode policyMode;
+    private final List<String> allowedRoutes;
+    private final Map<String, List<String>> groupRoutes;
+    private final PolicyNode root = new PolicyNode();
+    private final AtomicInteger cachedDocuments = new AtomicInteger();
+
+    public AuthorizerPolicyFactory(PolicyMode policyMode, List<String> allowedRoutes) {
+        this(policyMode, allowedRoutes, Map.of());
+    }
+
+    /**
+     * @param allowedRoutes routes every authenticated principal is entitled to
+     * @param groupRoutes   additional routes for the members of each Cognito group
+     */
+    public AuthorizerPolicyFactory(PolicyMode policyMode, List<String> allowedRoutes,
+                                   Map<String, List<String>> groupRoutes) {
+        this.policyMode = policyMode;
+        this.allowedRoutes = List.copyOf(allowedRoutes);
+        this.groupRoutes = Map.copyOf(groupRoutes);
+    }
+
+    /**
+     * Reads the mode from AUTHORIZER_POLICY_MODE (METHOD or API, defaults to METHOD), the routes of every
+     * principal from AUTHORIZER_ALLOWED_ROUTES, a comma separated list of METHOD/path patterns such as
+     * {@code GET/users/*}, and the routes per Cognito group from AUTHORIZER_GROUP_ROUTES, such as
+     * {@code admins=GET/*,POST/*;readers=GET/users/*}.
+     * <p>
+     * Without group routes AUTHORIZER_ALLOWED_ROUTES defaults to all routes; with them it defaults to none,
+     * so only the members of a listed group are let in.
+     */
+    public static AuthorizerPolicyFactory fromEnvironment() {
+        String mode = System.getenv(POLICY_MODE_ENV);
+        PolicyMode policyMode = mode == null || mode.isBlank()
+                ? PolicyMode.METHOD
+                : PolicyMode.valueOf(mode.trim().toUpperCase());
+
+        String routes = System.getenv(ALLOWED_ROUTES_ENV);
+        Map<String, List<String>> groupRoutes = parseGroupRoutes(System.getenv(GROUP_ROUTES_ENV));
+        List<String> allowedRoutes = groupRoutes.isEmpty() || (routes != null && !routes.isBlank())
+                ? parseRoutes(routes)
+                : List.of();
+
+        return new AuthorizerPolicyFactory(policyMode, allowedRoutes, groupRoutes);
+    }
+
+    /**
+     * Splits a semicolon separated list of group=routes entries, the routes being a list as read by
+     * {@link #parseRoutes(String)}. A group without routes is rejected rather than silently given all of them.
+     */
+    static Map<String, List<String>> parseGroupRoutes(String groupRoutes) {
+        Map<String, List<String>> routesByGroup = new LinkedHashMap<>();
+        if (groupRoutes == null) {
+            return routesByGroup;
+        }
+
+        for (String entry : groupRoutes.split(";")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int equals = entry.indexOf('=');
+            String group = equals > 0 ? entry.substring(0, equals).trim() : "";
+            String routes = equals > 0 ? entry.substring(equals + 1) : "";
+            if (group.isEmpty() || routes.isBlank()) {
+                throw new IllegalArgumentException(String.format("Invalid entry in %s: %s, expected group=routes",
+                        GROUP_ROUTES_ENV, entry.trim()));
+            }
+            routesByGroup.put(group, parseRoutes(GROUP_ROUTES_ENV, routes));
+        }
+        return routesByGroup;
+    }
+
+    /**
+     * Splits a comma separated route list. Blank entries are skipped and a list without routes means all
+     * routes; an entry that is not a METHOD/path pattern is rejected rather than put into a policy.
+     */
+    static List<String> parseRoutes(String routes) {
+        return parseRoutes(ALLOWED_ROUTES_ENV, routes);
+    }
+
+    private static List<String> parseRoutes(String variable, String routes) {
+        List<String> allowedRoutes = routes == null
+                ? List.of()
+                : Arrays.stream(routes.split(","))
+                        .map(String::trim)
+                        .filter(route -> !route.isEmpty())
+                        .collect(Collectors.toList());
+
+        for (String route : allowedRoutes) {
+            int slash = route.indexOf('/');
+            if (slash <= 0 || slash == route.length() - 1) {
+                throw new IllegalArgumentException(String.format("Invalid route in %s: %s, expected METHOD/path",
+                        variable, route));
+            }
+        }
+        return allowedRoutes.isEmpty() ? List.of(ALL_ROUTES) : allowedRoutes;
+    }
+
+    /**
+     * A policy denying every execute-api resource, for outputs that are not tied to an API request.
+     */
+    public static PolicyDocument denyAll() {
+        return DENY_ALL;
+    }
+
+    public PolicyMode getPolicyMode() {
+        return policyMode;
+    }
+
+    /**
+     * The policy document for a principal without groups.
+     */
+    public PolicyDocument buildPolicyDocument(String region,
+                                              APIGatewayProxyRequestEvent.ProxyRequestContext proxyRequestContext,
+                                              String effect) {
+        return buildPolicyDocument(region, proxyRequestContext, effect, null);
+    }
+
+    /**
+     * The policy document for the request. Documents are immutable and shared: the first request for an
+     * (account, API, stage, entitlements, method, effect) combination builds it, later ones get the same
+     * instance.
+     *
+     * @param groups the principal's Cognito groups, comma separated, or null
+     */
+    public PolicyDocument buildPolicyDocument(String region,
+                                              APIGatewayProxyRequestEvent.ProxyRequestContext proxyRequestContext,
+                                              String effect, String groups) {
+
+        // The method only matters when the policy is scoped to it, the groups when the routes are
+        String httpMethod = policyMode == PolicyMode.METHOD ? proxyRequestContext.getHttpMethod() : null;
+        String accountId = proxyRequestContext.getAccountId();
+        String apiId = proxyRequestContext.getApiId();
+        String stage = proxyRequestContext.getStage();
+        String entitlements = policyMode == PolicyMode.API ? entitlementKey(groups) : null;
+
+        // Plain map lookups on the request's own strings, nothing is allocated once the document exists
+        boolean create = cachedDocuments.get() < MAX_CACHED_DOCUMENTS;
+        PolicyNode node = root.child(region, create);
+        if (node != null) {
+            node = node.child(accountId, create);
+        }
+        if (node != null) {
+            node = node.child(apiId, create);
+        }
+        if (node != null) {
+            node = node.child(stage, create);
+        }
+        if (node != null) {
+            node = node.child(entitlements, create);
+        }
+        if (node != null) {
+            node = node.child(httpMethod, create);
+        }
+        if (node != null) {
+            node = node.child(effect, create);
+        }
+
+        if (node != null && node.policyDocument != null) {
+            return node.policyDocument;
+        }
+
+        PolicyDocument policyDocument = createPolicyDocument(region, accountId, apiId, stage, entitlements, httpMethod,
+                effect);
+        if (node != null) {
+            synchronized (node) {
+                if (node.policyDocument == null) {
+                    node.policyDocument = policyDocument;
+                    cachedDocuments.incrementAndGet();
+                }
+                policyDocument = node.policyDocument;
+            }
+        }
+        return policyDocument;
+    }
+
+    /**
+     * The principal's groups that have routes, sorted and comma separated, so that principals with the same
+     * entitlements share a document however their token orders the groups or whatever other groups they have.
+     */
+    String entitlementKey(String groups) {
+        if (groupRoutes.isEmpty() || groups == null || groups.isEmpty()) {
+            return "";
+        }
+        return Arrays.stream(groups.split(","))
+                .map(String::trim)
+                .filter(groupRoutes::containsKey)
+                .distinct()
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    private PolicyDocument createPolicyDocument(String region, String accountId, String apiId, String stage,
+                                                String entitlements, String httpMethod, String effect) {
+
+        String arnPrefix = "arn:aws:execute-api:" + region + ":" + accountId + ":" + apiId + "/" + stage + "/";
+
+        List<String> routes;
+        if (policyMode == PolicyMode.METHOD) {
+            routes = List.of(httpMethod + "/*");
+        } else if ("Allow".equals(effect)) {
+            routes = entitledRoutes(entitlements);
+            if (routes.isEmpty()) {
+                // Authenticated, but not entitled to anything
+                effect = "Deny";
+                routes = List.of(ALL_ROUTES);
+            }
+        } else {
+            // A cached Deny must cover the whole API, not just the route that was called first
+            routes = List.of(ALL_ROUTES);
+        }
+
+        List<Statement> statements = new ArrayList<>(routes.size());
+        for (String route : routes) {
+            statements.add(Statement.builder()
+                    .action("execute-api:Invoke")
+                    .effect(effect)
+                    .resource(arnPrefix + route)
+                    .build());
+        }
+
+        return PolicyDocument.builder()
+                .version("2012-10-17")
+                .statements(statements)
+                .build();
+    }
+
+    private List<String> entitledRoutes(String entitlements) {
+        if (entitlements.isEmpty()) {
+            return allowedRoutes;
+        }
+        Set<String> routes = new LinkedHashSet<>(allowedRoutes);
+        for (String group : entitlements.split(",")) {
+            routes.addAll(groupRoutes.get(group));
+        }
+        return List.copyOf(routes);
+    }
+
+    // One level per key part: region, account, API, stage, entitlements, method and effect
+    private static final class PolicyNode {
+
+        private final ConcurrentMap<String, PolicyNode> children = new ConcurrentHashMap<>();
+        private volatile PolicyDocument policyDocument;
+
+        PolicyNode child(String key, boolean create) {
+            String nonNullKey = key != null ? key : "";
+            PolicyNode child = children.get(nonNullKey);
+            if (child == null && create) {
+                child = children.computeIfAbsent(nonNullKey, ignored -> new PolicyNode());
+            }
+            return child;
+        }
+    }
+}
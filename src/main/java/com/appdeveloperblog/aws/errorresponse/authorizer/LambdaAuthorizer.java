@@ -5,73 +5,163 @@ import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.shared.AuthorizerContext;
+import com.appdeveloperblog.aws.errorresponse.shared.InvocationMetrics;
+import com.appdeveloperblog.aws.errorresponse.shared.JsonCodec;
+import com.appdeveloperblog.aws.errorresponse.shared.Priming;
+import com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger;
+import com.appdeveloperblog.aws.errorresponse.shared.WarmUp;
 import com.appdeveloperblog.aws.errorresponse.utils.JwtUtils;
+import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
-import java.util.Arrays;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import static com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger.lazy;
 
 public class LambdaAuthorizer implements RequestHandler<APIGatewayProxyRequestEvent, AuthorizerOutput> {
 
+    // Shared by all invocations of a warm container
+    private static final AuthorizerDecisionCache DECISION_CACHE = new AuthorizerDecisionCache(
+            10_000,
+            Duration.ofHours(1),
+            Duration.ofSeconds(30));
+
+    private static final AuthorizerPolicyFactory POLICY_FACTORY = AuthorizerPolicyFactory.fromEnvironment();
+
+    private final JwtUtils jwtUtils;
+    private final String region;
+    private final String userPoolId;
+    private final String audience;
+
+    public LambdaAuthorizer(JwtUtils jwtUtils, String region, String userPoolId, String audience) {
+        this.jwtUtils = jwtUtils;
+        this.region = region;
+        this.userPoolId = userPoolId;
+        this.audience = audience;
+    }
+
+    public LambdaAuthorizer() {
+        Priming.register();
+        this.jwtUtils = new JwtUtils();
+        this.region = System.getenv("AWS_REGION");
+        this.userPoolId = System.getenv("PHOTO_APP_USERS_POOL_ID");
+        this.audience = System.getenv("PHOTO_APP_USERS_APP_CLIENT_ID");
+    }
+
     @Override
     public AuthorizerOutput handleRequest(final APIGatewayProxyRequestEvent input, final Context context) {
         LambdaLogger logger = context.getLogger();
 
+        if (WarmUp.isWarmUp(input)) {
+            // Not an API Gateway request, but the output is still a valid authorizer response that grants nothing
+            long primingMillis = WarmUp.prime(logger);
+            return AuthorizerOutput.builder()
+                    .principalId("warm-up")
+                    .policyDocument(AuthorizerPolicyFactory.denyAll())
+                    .context(Map.of("primingMillis", String.valueOf(primingMillis)))
+                    .build();
+        }
+
+        InvocationMetrics metrics = InvocationMetrics.start("LambdaAuthorizer", context);
+        try {
+            return authorize(input, StructuredLogger.forRequest("LambdaAuthorizer", context), metrics);
+        } finally {
+            metrics.emit(logger);
+        }
+    }
+
+    private AuthorizerOutput authorize(APIGatewayProxyRequestEvent input, StructuredLogger log,
+                                       InvocationMetrics metrics) {
+
         String userName = input.getPathParameters().get("username");
-        logger.log("username: " + userName);
 
         String effect = "Allow";
 
         String jwt = input.getHeaders().get("Authorization");
-        String region = System.getenv("AWS_REGION");
-        String userPoolId = System.getenv("PHOTO_APP_USERS_POOL_ID");
-        String audience = System.getenv("PHOTO_APP_USERS_APP_CLIENT_ID");
 
-        JwtUtils jwtUtils = new JwtUtils();
         DecodedJWT decodedJWT = null;
 
-        logger.log("jwt: " + jwt + ", " + "region: " + region + ", " + "userPoolId: " + userPoolId + ", " + "userName: " + userName + ", " + "audience: " + audience);
-
-        try {
-            decodedJWT = jwtUtils.validateJwtForUser(jwt, region, userPoolId, userName, audience);
-            userName = decodedJWT.getSubject();
-        } catch (RuntimeException e) {
-            effect = "Deny";
-            e.printStackTrace();
+        log.debug("Authorizing request", "username", userName, "jwt", jwt, "region", region,
+                "userPoolId", userPoolId, "audience", audience);
+
+        AuthorizerDecisionCache.Decision decision = DECISION_CACHE.get(jwt);
+
+        if (decision == null) {
+            metrics.count("DecisionCache.Miss");
+            long verifyStart = System.nanoTime();
+            try {
+                decodedJWT = jwtUtils.validateJwtForUser(jwt, region, userPoolId, userName, audience);
+                decision = DECISION_CACHE.putAllow(jwt, decodedJWT.getSubject(), decodedJWT.getExpiresAt(),
+                        buildContext(decodedJWT));
+            } catch (JWTVerificationException e) {
+                // The token itself is invalid, so the same answer can be given to repeated attempts
+                decision = DECISION_CACHE.putDeny(jwt);
+                metrics.errorCode(e.getClass().getSimpleName());
+                log.warn("Token rejected", "username", userName, "error", e);
+            } catch (RuntimeException e) {
+                // Possibly transient (e.g. jwks.json unavailable), do not cache
+                effect = "Deny";
+                metrics.errorCode(e.getClass().getSimpleName());
+                log.error("Token verification failed", "username", userName, "error", e);
+            } finally {
+                metrics.recordStage("VerifyToken", verifyStart);
+            }
+        } else {
+            metrics.count("DecisionCache.Hit");
+        }
 
+        if (decision != null) {
+            effect = decision.getEffect();
+            if (decision.getPrincipalId() != null) {
+                userName = decision.getPrincipalId();
+            }
         }
 
+        log.debug("Decision cache", "hits", lazy(DECISION_CACHE::getHitCount), "misses", lazy(DECISION_CACHE::getMissCount));
+
         APIGatewayProxyRequestEvent.ProxyRequestContext proxyRequestContext =
                 input.getRequestContext();
 
-        String arn = String.format("arn:aws:execute-api:%s:%s:%s/%s/%s/%s",
-                System.getenv("AWS_REGION"),
-                proxyRequestContext.getAccountId(),
-                proxyRequestContext.getApiId(),
-                proxyRequestContext.getStage(),
-                proxyRequestContext.getHttpMethod(),
-                "*");
-
-        Statement statement = Statement.builder()
-                .action("execute-api:Invoke")
-                .effect(effect)
-                .resource(arn)
-                .build();
-
-        PolicyDocument policyDocument = PolicyDocument.builder()
-                .version("2012-10-17")
-                .statements(Arrays.asList(statement))
-                .build();
+        // Routes are granted per principal, from the groups of the verified token
+        String groups = decision != null ? decision.getContext().get(AuthorizerContext.GROUPS) : null;
+        PolicyDocument policyDocument = POLICY_FACTORY.buildPolicyDocument(region, proxyRequestContext, effect,
+                groups);
 
         AuthorizerOutput authorizerOutput = AuthorizerOutput.builder()
                 .principalId(userName)
                 .policyDocument(policyDocument)
+                .context(decision != null ? decision.getContext() : Map.of())
                 .build();
 
-        logger.log(new Gson().toJson(authorizerOutput, AuthorizerOutput.class));
+        log.info("Authorization decision", "principalId", userName, "effect", effect);
+        log.debug("Authorizer output", "output", lazy(() -> JsonCodec.toJsonTree(authorizerOutput)));
 
         return authorizerOutput;
     }
+
+    // Verified claims passed on to the integration as requestContext.authorizer
+    private static Map<String, String> buildContext(DecodedJWT decodedJWT) {
+        Map<String, String> context = new HashMap<>();
+        putClaim(context, AuthorizerContext.SUB, decodedJWT.getSubject());
+        putClaim(context, AuthorizerContext.USERNAME, decodedJWT.getClaim("cognito:username").asString());
+        putClaim(context, AuthorizerContext.NAME, decodedJWT.getClaim("name").asString());
+        putClaim(context, AuthorizerContext.EMAIL, decodedJWT.getClaim("email").asString());
+        putClaim(context, AuthorizerContext.USER_ID, decodedJWT.getClaim("custom:userid").asString());
+
+        List<String> groups = decodedJWT.getClaim("cognito:groups").asList(String.class);
+        if (groups != null) {
+            context.put(AuthorizerContext.GROUPS, String.join(",", groups));
+        }
+        return context;
+    }
+
+    private static void putClaim(Map<String, String> context, String key, String value) {
+        if (value != null) {
+            context.put(key, value);
+        }
+    }
 }
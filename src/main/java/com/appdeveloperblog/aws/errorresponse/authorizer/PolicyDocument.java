@@ -9,12 +9,13 @@ import java.util.List;
 @JsonDeserialize(builder = PolicyDocument.Builder.class)
 public class PolicyDocument {
 
-    public String Version;
-    public List<Statement> Statement;
+    // Final and unmodifiable, documents are shared between invocations by AuthorizerPolicyFactory
+    public final String Version;
+    public final List<Statement> Statement;
 
     private PolicyDocument(Builder builder) {
         this.Version = builder.version;
-        this.Statement = builder.statements;
+        this.Statement = builder.statements != null ? List.copyOf(builder.statements) : null;
     }
 
     public static Builder builder(){
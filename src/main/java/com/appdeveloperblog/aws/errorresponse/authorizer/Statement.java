@@ -8,9 +8,9 @@ import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 @JsonDeserialize(builder = Statement.Builder.class)
 public class Statement {
 
-    public String Action;
-    public String Effect;
-    public String Resource;
+    public final String Action;
+    public final String Effect;
+    public final String Resource;
 
     private Statement(Builder builder) {
         this.Action = builder.action;
@@ -0,0 +1,136 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.appdeveloperblog.aws.errorresponse.shared.EnvironmentVariables;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTDecodeException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches {@link CognitoUserService#getUser} and {@link CognitoUserService#getUserAsync} results by the SHA-256 digest of the access token.
+ * <p>
+ * An entry never outlives the token's exp claim, which is only decoded here: Cognito validated the token
+ * when the entry was loaded. Entries are also capped at a maximum TTL so that a token revoked through a
+ * global sign-out stops being served within that time. Size and TTL are read from
+ * ACCESS_TOKEN_CACHE_MAX_SIZE (default 1000) and ACCESS_TOKEN_CACHE_MAX_TTL_SECONDS (default 300).
+ */
+public class AccessTokenUserCache {
+
+    private static final AccessTokenUserCache SHARED = fromEnvironment();
+
+    private final Cache<String, Entry> users;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public AccessTokenUserCache(long maximumSize, Duration maximumTtl) {
+        this.users = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(maximumTtl.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public static AccessTokenUserCache shared() {
+        return SHARED;
+    }
+
+    public static AccessTokenUserCache fromEnvironment() {
+        return new AccessTokenUserCache(
+                EnvironmentVariables.getLong("ACCESS_TOKEN_CACHE_MAX_SIZE", 1000),
+                Duration.ofSeconds(EnvironmentVariables.getLong("ACCESS_TOKEN_CACHE_MAX_TTL_SECONDS", 300)));
+    }
+
+    public JsonObject get(String accessToken, Supplier<JsonObject> loader) {
+        Date expiresAt = getExpiresAt(accessToken);
+        JsonObject cachedUser = getCached(accessToken, expiresAt);
+        if (cachedUser != null) {
+            return cachedUser;
+        }
+        return put(accessToken, expiresAt, loader.get());
+    }
+
+    /**
+     * Variant of {@link #get} for loaders that do not block; the entry is stored once the loader completes.
+     */
+    public CompletableFuture<JsonObject> getAsync(String accessToken, Supplier<CompletableFuture<JsonObject>> loader) {
+        Date expiresAt = getExpiresAt(accessToken);
+        JsonObject cachedUser = getCached(accessToken, expiresAt);
+        if (cachedUser != null) {
+            return CompletableFuture.completedFuture(cachedUser);
+        }
+        return loader.get().thenApply(user -> put(accessToken, expiresAt, user));
+    }
+
+    // Counts the lookup; null on a miss
+    private JsonObject getCached(String accessToken, Date expiresAt) {
+        if (expiresAt == null) {
+            // Not a JWT we can read, let Cognito decide
+            misses.incrementAndGet();
+            return null;
+        }
+
+        Entry entry = users.getIfPresent(key(accessToken));
+        if (entry != null && entry.expiresAtMillis > System.currentTimeMillis()) {
+            hits.incrementAndGet();
+            return entry.user.deepCopy();
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private JsonObject put(String accessToken, Date expiresAt, JsonObject user) {
+        if (expiresAt != null) {
+            users.put(key(accessToken), new Entry(user.deepCopy(), expiresAt.getTime()));
+        }
+        return user;
+    }
+
+    public Map<String, Number> getStats() {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("size", users.size());
+        stats.put("hitCount", hits.get());
+        stats.put("missCount", misses.get());
+        return stats;
+    }
+
+    public void invalidateAll() {
+        users.invalidateAll();
+    }
+
+    private static String key(String accessToken) {
+        return Hashing.sha256().hashString(accessToken, StandardCharsets.UTF_8).toString();
+    }
+
+    private static Date getExpiresAt(String accessToken) {
+        if (accessToken == null) {
+            return null;
+        }
+        try {
+            return JWT.decode(accessToken).getExpiresAt();
+        } catch (JWTDecodeException e) {
+            return null;
+        }
+    }
+
+    private static final class Entry {
+        private final JsonObject user;
+        private final long expiresAtMillis;
+
+        private Entry(JsonObject user, long expiresAtMillis) {
+            this.user = user;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.appdeveloperblog.aws.errorresponse.shared.EnvironmentVariables;
+import io.netty.channel.ChannelOption;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.core.retry.conditions.AndRetryCondition;
+import software.amazon.awssdk.core.retry.conditions.RetryCondition;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.ExecutableHttpRequest;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.SdkHttpFullRequest;
+import software.amazon.awssdk.http.SdkHttpMethod;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.async.AsyncExecuteRequest;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderAsyncClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+import software.amazon.awssdk.services.kms.KmsClient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Hands out AWS SDK clients shared by every handler in the JVM.
+ * <p>
+ * Clients are built lazily on first use with an explicit region, credentials provider and HTTP client,
+ * so no provider discovery chain runs during init and pooled connections stay warm across invocations.
+ * Pool size can be tuned with AWS_HTTP_MAX_CONNECTIONS, for the non-blocking Netty client used by async
+ * calls with AWS_ASYNC_HTTP_MAX_CONCURRENCY.
+ * <p>
+ * The HTTP clients handed out delegate to a pool that {@link #refreshConnections()} can swap for a new one,
+ * so the connections pooled before a SnapStart checkpoint can be dropped after the restore without rebuilding
+ * the SDK clients that use them.
+ */
+public final class AwsClientFactory {
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 50;
+    private static final int DEFAULT_MAX_CONCURRENCY = 100;
+
+    private static volatile RefreshableHttpClient httpClient;
+    private static volatile RefreshableAsyncHttpClient asyncHttpClient;
+    private static volatile AwsCredentialsProvider credentialsProvider;
+    private static volatile CognitoIdentityProviderClient cognitoClient;
+    private static volatile CognitoIdentityProviderAsyncClient cognitoAsyncClient;
+    private static volatile KmsClient kmsClient;
+
+    private AwsClientFactory() {
+    }
+
+    public static Region getRegion() {
+        return Region.of(System.getenv("AWS_REGION"));
+    }
+
+    public static SdkHttpClient getHttpClient() {
+        if (httpClient == null) {
+            synchronized (AwsClientFactory.class) {
+                if (httpClient == null) {
+                    httpClient = new RefreshableHttpClient(buildHttpClient());
+                }
+            }
+        }
+        return httpClient;
+    }
+
+    private static SdkHttpClient buildHttpClient() {
+        // Apache's default socket config already sets TCP_NODELAY
+        return ApacheHttpClient.builder()
+                .maxConnections(EnvironmentVariables.getInt("AWS_HTTP_MAX_CONNECTIONS", DEFAULT_MAX_CONNECTIONS))
+                .tcpKeepAlive(true)
+                .connectionTimeout(Duration.ofSeconds(2))
+                .socketTimeout(Duration.ofSeconds(10))
+                .connectionMaxIdleTime(Duration.ofMinutes(1))
+                .build();
+    }
+
+    public static SdkAsyncHttpClient getAsyncHttpClient() {
+        if (asyncHttpClient == null) {
+            synchronized (AwsClientFactory.class) {
+                if (asyncHttpClient == null) {
+                    asyncHttpClient = new RefreshableAsyncHttpClient(buildAsyncHttpClient());
+                }
+            }
+        }
+        return asyncHttpClient;
+    }
+
+    private static SdkAsyncHttpClient buildAsyncHttpClient() {
+        return NettyNioAsyncHttpClient.builder()
+                .maxConcurrency(EnvironmentVariables.getInt("AWS_ASYNC_HTTP_MAX_CONCURRENCY", DEFAULT_MAX_CONCURRENCY))
+                .tcpKeepAlive(true)
+                .putChannelOption(ChannelOption.TCP_NODELAY, true)
+                .connectionTimeout(Duration.ofSeconds(2))
+                .readTimeout(Duration.ofSeconds(10))
+                .connectionMaxIdleTime(Duration.ofMinutes(1))
+                .build();
+    }
+
+    /**
+     * Closes the pooled connections of the shared HTTP clients built so far and gives them new, empty pools.
+     * Meant for when no request is in flight, e.g. after a SnapStart restore, when every pooled connection is
+     * stale. Clients already handed out keep working and use the new pools from their next request on.
+     */
+    public static void refreshConnections() {
+        synchronized (AwsClientFactory.class) {
+            if (httpClient != null) {
+                httpClient.replace(buildHttpClient());
+            }
+            if (asyncHttpClient != null) {
+                asyncHttpClient.replace(buildAsyncHttpClient());
+            }
+        }
+    }
+
+    /**
+     * Opens a connection to the Cognito endpoint of the region in the shared pool, so the next Cognito call
+     * does not wait for TCP and TLS setup. The request is unsigned and names no operation, it touches no user
+     * data and its error response is ignored.
+     *
+     * @throws IllegalStateException when no response arrived within the timeout
+     */
+    public static void openCognitoConnection(Duration timeout) {
+        openConnection(getHttpClient(), URI.create("https://cognito-idp." + getRegion().id() + ".amazonaws.com/"),
+                timeout);
+    }
+
+    static void openConnection(SdkHttpClient client, URI endpoint, Duration timeout) {
+        SdkHttpFullRequest request = SdkHttpFullRequest.builder()
+                .method(SdkHttpMethod.POST)
+                .uri(endpoint)
+                .putHeader("Content-Type", "application/x-amz-json-1.1")
+                .putHeader("Content-Length", "0")
+                .build();
+        ExecutableHttpRequest call = client.prepareRequest(HttpExecuteRequest.builder()
+                .request(request)
+                .build());
+
+        CompletableFuture<Void> response = CompletableFuture.runAsync(() -> {
+            try {
+                HttpExecuteResponse httpResponse = call.call();
+                if (httpResponse.responseBody().isPresent()) {
+                    // Read to the end, so the connection goes back to the pool
+                    try (AbortableInputStream body = httpResponse.responseBody().get()) {
+                        body.readAllBytes();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        try {
+            response.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            call.abort();
+            throw new IllegalStateException("No response from " + endpoint + " within " + timeout, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not connect to " + endpoint, e.getCause());
+        } catch (InterruptedException e) {
+            call.abort();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while connecting to " + endpoint, e);
+        }
+    }
+
+    public static AwsCredentialsProvider getCredentialsProvider() {
+        if (credentialsProvider == null) {
+            synchronized (AwsClientFactory.class) {
+                if (credentialsProvider == null) {
+                    // Lambda exposes the execution role credentials as environment variables
+                    credentialsProvider = System.getenv("AWS_ACCESS_KEY_ID") != null
+                            ? EnvironmentVariableCredentialsProvider.create()
+                            : DefaultCredentialsProvider.create();
+                }
+            }
+        }
+        return credentialsProvider;
+    }
+
+    public static CognitoIdentityProviderClient getCognitoClient() {
+        if (cognitoClient == null) {
+            synchronized (AwsClientFactory.class) {
+                if (cognitoClient == null) {
+                    cognitoClient = CognitoIdentityProviderClient.builder()
+                            .region(getRegion())
+                            .credentialsProvider(getCredentialsProvider())
+                            .httpClient(getHttpClient())
+                            .overrideConfiguration(getCognitoOverrideConfiguration())
+                            .build();
+                }
+            }
+        }
+        return cognitoClient;
+    }
+
+    public static CognitoIdentityProviderAsyncClient getCognitoAsyncClient() {
+        if (cognitoAsyncClient == null) {
+            synchronized (AwsClientFactory.class) {
+                if (cognitoAsyncClient == null) {
+                    cognitoAsyncClient = CognitoIdentityProviderAsyncClient.builder()
+                            .region(getRegion())
+                            .credentialsProvider(getCredentialsProvider())
+                            .httpClient(getAsyncHttpClient())
+                            .overrideConfiguration(getCognitoOverrideConfiguration())
+                            .build();
+                }
+            }
+        }
+        return cognitoAsyncClient;
+    }
+
+    public static KmsClient getKmsClient() {
+        if (kmsClient == null) {
+            synchronized (AwsClientFactory.class) {
+                if (kmsClient == null) {
+                    kmsClient = KmsClient.builder()
+                            .region(getRegion())
+                            .credentialsProvider(getCredentialsProvider())
+                            .httpClient(getHttpClient())
+                            .build();
+                }
+            }
+        }
+        return kmsClient;
+    }
+
+    // Throttling is retried by CognitoRateLimiter, the SDK only retries the remaining transient errors
+    static ClientOverrideConfiguration getCognitoOverrideConfiguration() {
+        RetryCondition retryCondition = AndRetryCondition.create(
+                RetryCondition.defaultRetryCondition(),
+                context -> !CognitoRateLimiter.isThrottling(context.exception()));
+
+        return ClientOverrideConfiguration.builder()
+                .retryPolicy(RetryPolicy.builder().retryCondition(retryCondition).build())
+                .build();
+    }
+
+    // The SDK clients keep the instance they were built with, the pool behind it can be replaced
+
+    private static final class RefreshableHttpClient implements SdkHttpClient {
+
+        private volatile SdkHttpClient delegate;
+
+        RefreshableHttpClient(SdkHttpClient delegate) {
+            this.delegate = delegate;
+        }
+
+        void replace(SdkHttpClient fresh) {
+            SdkHttpClient stale = delegate;
+            delegate = fresh;
+            stale.close();
+        }
+
+        @Override
+        public ExecutableHttpRequest prepareRequest(HttpExecuteRequest request) {
+            return delegate.prepareRequest(request);
+        }
+
+        @Override
+        public String clientName() {
+            return delegate.clientName();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+
+    private static final class RefreshableAsyncHttpClient implements SdkAsyncHttpClient {
+
+        private volatile SdkAsyncHttpClient delegate;
+
+        RefreshableAsyncHttpClient(SdkAsyncHttpClient delegate) {
+            this.delegate = delegate;
+        }
+
+        void replace(SdkAsyncHttpClient fresh) {
+            SdkAsyncHttpClient stale = delegate;
+            delegate = fresh;
+            stale.close();
+        }
+
+        @Override
+        public CompletableFuture<Void> execute(AsyncExecuteRequest request) {
+            return delegate.execute(request);
+        }
+
+        @Override
+        public String clientName() {
+            return delegate.clientName();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+}
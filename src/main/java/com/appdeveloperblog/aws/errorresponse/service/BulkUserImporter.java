@@ -0,0 +1,207 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.appdeveloperblog.aws.errorresponse.shared.Constants;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Streams user records from an NDJSON or CSV source and signs them up with
+ * {@link CognitoUserService#createUserAsync} while keeping at most {@code maxConcurrency} calls in flight.
+ * <p>
+ * Each record produces exactly one result object, passed to the result consumer as soon as its call
+ * finishes, so results arrive in completion order rather than input order. The consumer may be called
+ * from SDK threads and must be thread-safe.
+ */
+public class BulkUserImporter {
+
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    private static final String[] REQUIRED_FIELDS = {"username", "password", "email", "firstName", "lastName"};
+
+    private final CognitoUserService cognitoUserService;
+    private final int maxConcurrency;
+
+    public BulkUserImporter(CognitoUserService cognitoUserService, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        this.cognitoUserService = cognitoUserService;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Imports every record read from the given source and returns once all results have been delivered.
+     *
+     * @return the number of records read
+     */
+    public int importUsers(Reader source, Format format, String appClientId, String appClientSecret,
+                           Consumer<JsonObject> resultConsumer) {
+
+        Semaphore inFlight = new Semaphore(maxConcurrency);
+        int recordCount = 0;
+
+        try (BufferedReader reader = new BufferedReader(source)) {
+            String[] csvHeader = null;
+            int lineNumber = 0;
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (format == Format.CSV && csvHeader == null) {
+                    csvHeader = parseCsvLine(line).toArray(new String[0]);
+                    continue;
+                }
+
+                recordCount++;
+                final int recordLine = lineNumber;
+
+                JsonObject userDetails;
+                try {
+                    userDetails = format == Format.CSV ? parseCsvRecord(csvHeader, line) : parseJsonRecord(line);
+                    validate(userDetails);
+                } catch (RuntimeException e) {
+                    resultConsumer.accept(failure(recordLine, null, 400, e.getMessage()));
+                    continue;
+                }
+
+                String username = userDetails.get("username").getAsString();
+
+                // Blocks reading of the source while maxConcurrency calls are outstanding
+                inFlight.acquireUninterruptibly();
+                try {
+                    cognitoUserService.createUserAsync(userDetails, appClientId, appClientSecret)
+                            .whenComplete((createUserResult, throwable) -> {
+                                try {
+                                    resultConsumer.accept(throwable == null
+                                            ? success(recordLine, username, createUserResult)
+                                            : failure(recordLine, username, throwable));
+                                } finally {
+                                    inFlight.release();
+                                }
+                            });
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    resultConsumer.accept(failure(recordLine, username, e));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while reading user records", e);
+        } finally {
+            // Wait for the calls still in flight
+            inFlight.acquireUninterruptibly(maxConcurrency);
+            inFlight.release(maxConcurrency);
+        }
+
+        return recordCount;
+    }
+
+    private static JsonObject parseJsonRecord(String line) {
+        JsonElement record = JsonParser.parseString(line);
+        if (!record.isJsonObject()) {
+            throw new IllegalArgumentException("Record is not a JSON object");
+        }
+        return record.getAsJsonObject();
+    }
+
+    private static JsonObject parseCsvRecord(String[] header, String line) {
+        List<String> values = parseCsvLine(line);
+        if (values.size() != header.length) {
+            throw new IllegalArgumentException("Expected " + header.length + " columns but found " + values.size());
+        }
+
+        JsonObject userDetails = new JsonObject();
+        for (int i = 0; i < header.length; i++) {
+            userDetails.addProperty(header[i].trim(), values.get(i));
+        }
+        return userDetails;
+    }
+
+    // Splits one CSV line, honouring double quoted fields and "" escapes
+    private static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private static void validate(JsonObject userDetails) {
+        for (String field : REQUIRED_FIELDS) {
+            JsonElement value = userDetails.get(field);
+            if (value == null || value.isJsonNull() || !value.isJsonPrimitive() || value.getAsString().isBlank()) {
+                throw new IllegalArgumentException("Missing required field: " + field);
+            }
+        }
+    }
+
+    private static JsonObject success(int line, String username, JsonObject createUserResult) {
+        JsonObject result = createUserResult.deepCopy();
+        result.addProperty("line", line);
+        result.addProperty("username", username);
+        return result;
+    }
+
+    private static JsonObject failure(int line, String username, Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+
+        if (cause instanceof CognitoThrottledException) {
+            return failure(line, username, 429, cause.getMessage());
+        }
+        if (cause instanceof AwsServiceException && ((AwsServiceException) cause).awsErrorDetails() != null) {
+            AwsServiceException awsServiceException = (AwsServiceException) cause;
+            return failure(line, username, awsServiceException.statusCode(),
+                    awsServiceException.awsErrorDetails().errorMessage());
+        }
+        return failure(line, username, 500, cause.getMessage());
+    }
+
+    private static JsonObject failure(int line, String username, int statusCode, String message) {
+        JsonObject result = new JsonObject();
+        result.addProperty("line", line);
+        result.addProperty("username", username);
+        result.addProperty(Constants.IS_SUCCESSFUL, false);
+        result.addProperty(Constants.STATUS_CODE, statusCode);
+        result.addProperty("message", message);
+        return result;
+    }
+}
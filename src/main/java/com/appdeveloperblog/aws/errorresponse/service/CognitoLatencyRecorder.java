@@ -0,0 +1,279 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
+import com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * In-process latency histograms for Cognito calls, one per operation and outcome.
+ * <p>
+ * Recording is lock-free and allocation-free: the histograms are created up front and a value only increments
+ * an {@link AtomicLongArray} bucket. Buckets are log-linear (HdrHistogram style) over microseconds, so any
+ * recorded latency is reported within about 3% of its real value, up to about 35 minutes.
+ * {@link #snapshotAndReset()} gives interval data, {@link #startPeriodicDump} writes it to a logger, e.g. every
+ * minute, to follow tail latency and its drift in long-running deployments. Set COGNITO_LATENCY_DUMP_SECONDS to
+ * have the shared recorder dump through the Lambda logger.
+ */
+public class CognitoLatencyRecorder {
+
+    public enum Operation {
+        SIGN_UP("Cognito.SignUp"),
+        CONFIRM_SIGN_UP("Cognito.ConfirmSignUp"),
+        INITIATE_AUTH("Cognito.InitiateAuth"),
+        GET_USER("Cognito.GetUser"),
+        ADMIN_GET_USER("Cognito.AdminGetUser"),
+        ADMIN_ADD_USER_TO_GROUP("Cognito.AdminAddUserToGroup");
+
+        private final String metricName;
+
+        Operation(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    public enum Outcome {
+        SUCCESS,
+        THROTTLED,
+        ERROR
+    }
+
+    private static final ScheduledExecutorService DUMP_EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cognito-latency-dump");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final CognitoLatencyRecorder SHARED = fromEnvironment();
+
+    private final Histogram[][] histograms = new Histogram[Operation.values().length][Outcome.values().length];
+
+    public CognitoLatencyRecorder() {
+        for (Operation operation : Operation.values()) {
+            for (Outcome outcome : Outcome.values()) {
+                histograms[operation.ordinal()][outcome.ordinal()] = new Histogram();
+            }
+        }
+    }
+
+    /**
+     * Process-wide recorder, shared by every CognitoUserService in the JVM.
+     */
+    public static CognitoLatencyRecorder shared() {
+        return SHARED;
+    }
+
+    private static CognitoLatencyRecorder fromEnvironment() {
+        CognitoLatencyRecorder recorder = new CognitoLatencyRecorder();
+        String dumpSeconds = System.getenv("COGNITO_LATENCY_DUMP_SECONDS");
+        if (dumpSeconds == null || dumpSeconds.isBlank()) {
+            return recorder;
+        }
+
+        StructuredLogger log = StructuredLogger.forSource("CognitoLatencyRecorder", LambdaRuntime.getLogger());
+        long seconds;
+        try {
+            seconds = Long.parseLong(dumpSeconds.trim());
+        } catch (NumberFormatException e) {
+            seconds = 0;
+        }
+        if (seconds <= 0) {
+            // A bad value must not break class initialization, and with it every CognitoUserService
+            log.warn("Ignoring invalid COGNITO_LATENCY_DUMP_SECONDS", "value", dumpSeconds);
+            return recorder;
+        }
+
+        recorder.startPeriodicDump(snapshot -> log.info("Cognito latency", "snapshot", snapshot),
+                Duration.ofSeconds(seconds));
+        return recorder;
+    }
+
+    public void record(Operation operation, Outcome outcome, long durationNanos) {
+        histograms[operation.ordinal()][outcome.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+    }
+
+    /**
+     * Everything recorded since the recorder was created or last reset.
+     */
+    public Snapshot snapshot() {
+        return takeSnapshot(false);
+    }
+
+    /**
+     * Everything recorded since the last reset, and starts a new interval. Values recorded while the snapshot is
+     * taken land in either this interval or the next, never in both.
+     */
+    public Snapshot snapshotAndReset() {
+        return takeSnapshot(true);
+    }
+
+    /**
+     * Logs {@link #snapshotAndReset()} every {@code interval}, skipping intervals without calls.
+     * Cancel the returned future to stop.
+     */
+    public ScheduledFuture<?> startPeriodicDump(Consumer<String> logger, Duration interval) {
+        long intervalMillis = interval.toMillis();
+        return DUMP_EXECUTOR.scheduleAtFixedRate(() -> {
+            Snapshot snapshot = snapshotAndReset();
+            if (!snapshot.getEntries().isEmpty()) {
+                logger.accept(snapshot.toString());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private Snapshot takeSnapshot(boolean reset) {
+        List<Entry> entries = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            for (Outcome outcome : Outcome.values()) {
+                long[] counts = histograms[operation.ordinal()][outcome.ordinal()].copy(reset);
+                long count = 0;
+                for (long bucketCount : counts) {
+                    count += bucketCount;
+                }
+                if (count > 0) {
+                    entries.add(new Entry(operation, outcome, count, counts));
+                }
+            }
+        }
+        return new Snapshot(entries);
+    }
+
+    public static final class Snapshot {
+
+        private final List<Entry> entries;
+
+        private Snapshot(List<Entry> entries) {
+            this.entries = Collections.unmodifiableList(entries);
+        }
+
+        /**
+         * Operation and outcome pairs that were recorded at least once.
+         */
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        public Entry get(Operation operation, Outcome outcome) {
+            for (Entry entry : entries) {
+                if (entry.operation == operation && entry.outcome == outcome) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("Cognito latency (ms):");
+            entries.forEach(entry -> builder.append('\n').append(entry));
+            return builder.toString();
+        }
+    }
+
+    public static final class Entry {
+
+        private final Operation operation;
+        private final Outcome outcome;
+        private final long count;
+        private final long[] counts;
+
+        private Entry(Operation operation, Outcome outcome, long count, long[] counts) {
+            this.operation = operation;
+            this.outcome = outcome;
+            this.count = count;
+            this.counts = counts;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Latency in milliseconds at the given percentile (0-100): the highest value of the bucket holding that
+         * rank, so it is never below the real value.
+         */
+        public double getPercentileMillis(double percentile) {
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int index = 0; index < counts.length; index++) {
+                seen += counts[index];
+                if (seen >= rank) {
+                    return Histogram.highestValue(index) / 1_000.0;
+                }
+            }
+            return Histogram.highestValue(counts.length - 1) / 1_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %-9s count=%d p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f",
+                    operation.getMetricName(), outcome, count,
+                    getPercentileMillis(50), getPercentileMillis(90), getPercentileMillis(99),
+                    getPercentileMillis(99.9), getPercentileMillis(100));
+        }
+    }
+
+    // Log-linear buckets: values below 64 get a bucket each, every power of two above that is split in 32
+    static final class Histogram {
+
+        private static final int SUB_BUCKET_BITS = 5;
+        private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+        private static final long MAX_VALUE = Integer.MAX_VALUE;
+        static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+        void record(long value) {
+            buckets.incrementAndGet(indexOf(value));
+        }
+
+        long[] copy(boolean reset) {
+            long[] counts = new long[BUCKET_COUNT];
+            for (int index = 0; index < BUCKET_COUNT; index++) {
+                counts[index] = reset ? buckets.getAndSet(index, 0) : buckets.get(index);
+            }
+            return counts;
+        }
+
+        static int indexOf(long value) {
+            long clamped = Math.min(Math.max(value, 0), MAX_VALUE);
+            if (clamped < 2 * SUB_BUCKET_COUNT) {
+                return (int) clamped;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(clamped) - SUB_BUCKET_BITS;
+            return 2 * SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_COUNT
+                    + (int) (clamped >>> shift) - SUB_BUCKET_COUNT;
+        }
+
+        static long highestValue(int index) {
+            if (index < 2 * SUB_BUCKET_COUNT) {
+                return index;
+            }
+            int offset = index - 2 * SUB_BUCKET_COUNT;
+            int shift = offset / SUB_BUCKET_COUNT + 1;
+            long subBucket = offset % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+            return ((subBucket + 1) << shift) - 1;
+        }
+    }
+}
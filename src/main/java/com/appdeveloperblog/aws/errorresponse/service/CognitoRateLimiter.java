@@ -0,0 +1,331 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.appdeveloperblog.aws.errorresponse.shared.InvocationMetrics;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.TooManyRequestsException;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Client-side admission control for Cognito calls.
+ * <p>
+ * Every operation category has its own token bucket sized after the Cognito request-rate quota of that
+ * category. Calls wait for a token (up to {@link #MAX_QUEUE_WAIT_MILLIS}) before they are sent. When Cognito
+ * still answers with a throttling error the call is retried with full-jitter exponential backoff and the
+ * bucket's rate is cut, then slowly raised again on success, so a burst settles at the quota ceiling instead
+ * of turning into a retry storm. A call that gets no token in time, or is still throttled after the last retry,
+ * fails with {@link CognitoThrottledException}. Queued, rejected, throttled and retried calls are also counted in
+ * the {@link InvocationMetrics} of the invocation making the call. Rates default to the Cognito defaults and can be overridden with
+ * COGNITO_RATE_&lt;CATEGORY&gt; environment variables, e.g. COGNITO_RATE_USER_AUTHENTICATION=200.
+ */
+public class CognitoRateLimiter {
+
+    public enum OperationCategory {
+        USER_AUTHENTICATION(120),
+        USER_CREATION(50),
+        USER_ACCOUNT_READ(120),
+        USER_RESOURCE_UPDATE(25);
+
+        private final double defaultRequestsPerSecond;
+
+        OperationCategory(double defaultRequestsPerSecond) {
+            this.defaultRequestsPerSecond = defaultRequestsPerSecond;
+        }
+    }
+
+    static final long MAX_QUEUE_WAIT_MILLIS = 5_000;
+    static final int MAX_RETRIES = 4;
+    static final long BASE_BACKOFF_MILLIS = 50;
+    static final long MAX_BACKOFF_MILLIS = 2_000;
+
+    private static final String RATE_LIMIT_REACHED = "Cognito request rate limit reached, try again later";
+    private static final String STILL_THROTTLED = "Cognito is throttling requests, try again later";
+
+    // Per invocation counters
+    static final String QUEUED = "RateLimiter.Queued";
+    static final String REJECTED = "RateLimiter.Rejected";
+    static final String THROTTLED = "Cognito.Throttled";
+    static final String RETRIED = "Cognito.Retried";
+
+    private static final CognitoRateLimiter SHARED = fromEnvironment();
+
+    private final Map<OperationCategory, TokenBucket> buckets = new EnumMap<>(OperationCategory.class);
+
+    public CognitoRateLimiter(Map<OperationCategory, Double> requestsPerSecond) {
+        for (OperationCategory category : OperationCategory.values()) {
+            buckets.put(category, new TokenBucket(requestsPerSecond.getOrDefault(category,
+                    category.defaultRequestsPerSecond)));
+        }
+    }
+
+    /**
+     * Process-wide limiter, so all handlers and services in the JVM draw from the same buckets.
+     */
+    public static CognitoRateLimiter shared() {
+        return SHARED;
+    }
+
+    public static CognitoRateLimiter fromEnvironment() {
+        Map<OperationCategory, Double> requestsPerSecond = new EnumMap<>(OperationCategory.class);
+        for (OperationCategory category : OperationCategory.values()) {
+            String rate = System.getenv("COGNITO_RATE_" + category.name());
+            if (rate != null && !rate.isBlank()) {
+                requestsPerSecond.put(category, Double.parseDouble(rate.trim()));
+            }
+        }
+        return new CognitoRateLimiter(requestsPerSecond);
+    }
+
+    public <T> T execute(OperationCategory category, Supplier<T> call) {
+        InvocationMetrics metrics = InvocationMetrics.current();
+        TokenBucket bucket = buckets.get(category);
+        for (int attempt = 0; ; attempt++) {
+            // Blocking callers sleep until their token is due
+            long waitNanos = reserve(bucket, metrics);
+            if (waitNanos > 0) {
+                sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1);
+            }
+            try {
+                T result = call.get();
+                bucket.onSuccess();
+                return result;
+            } catch (AwsServiceException e) {
+                if (!isThrottling(e)) {
+                    bucket.onFailure(false);
+                    throw e;
+                }
+                CognitoThrottledException stillThrottled = onThrottled(bucket, metrics, e, attempt);
+                if (stillThrottled != null) {
+                    throw stillThrottled;
+                }
+                sleep(backoffMillis(attempt));
+            }
+        }
+    }
+
+    public <T> CompletableFuture<T> executeAsync(OperationCategory category, Supplier<CompletableFuture<T>> call) {
+        // Taken on the calling thread, retries run on timer threads
+        return executeAsync(buckets.get(category), InvocationMetrics.current(), call, 0);
+    }
+
+    private <T> CompletableFuture<T> executeAsync(TokenBucket bucket, InvocationMetrics metrics,
+                                                  Supplier<CompletableFuture<T>> call, int attempt) {
+        // The token is reserved right away and the call scheduled for when it is due, no thread waits for it
+        long waitNanos;
+        try {
+            waitNanos = reserve(bucket, metrics);
+        } catch (CognitoThrottledException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<T> response;
+        if (waitNanos == 0) {
+            response = send(call);
+        } else {
+            Executor delayed = CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS);
+            response = CompletableFuture.supplyAsync(() -> null, delayed)
+                    .thenCompose(ignored -> send(call));
+        }
+
+        return response
+                .handle((result, throwable) -> {
+                    if (throwable == null) {
+                        bucket.onSuccess();
+                        return CompletableFuture.completedFuture(result);
+                    }
+
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause()
+                            : throwable;
+                    if (!isThrottling(cause)) {
+                        bucket.onFailure(false);
+                        return CompletableFuture.<T>failedFuture(cause);
+                    }
+                    CognitoThrottledException stillThrottled = onThrottled(bucket, metrics, cause, attempt);
+                    if (stillThrottled != null) {
+                        return CompletableFuture.<T>failedFuture(stillThrottled);
+                    }
+
+                    Executor delayed = CompletableFuture.delayedExecutor(backoffMillis(attempt), TimeUnit.MILLISECONDS);
+                    return CompletableFuture.supplyAsync(() -> null, delayed)
+                            .thenCompose(ignored -> executeAsync(bucket, metrics, call, attempt + 1));
+                })
+                .thenCompose(future -> future);
+    }
+
+    // Takes a token, counting the call as queued when it has to wait; throws when it would wait too long
+    private static long reserve(TokenBucket bucket, InvocationMetrics metrics) {
+        try {
+            long waitNanos = bucket.tryReserve();
+            if (waitNanos > 0) {
+                metrics.count(QUEUED);
+            }
+            return waitNanos;
+        } catch (CognitoThrottledException e) {
+            metrics.count(REJECTED);
+            throw e;
+        }
+    }
+
+    // Counts a throttling response; returns the exception to give up with after the last retry, or null to retry
+    private static CognitoThrottledException onThrottled(TokenBucket bucket, InvocationMetrics metrics,
+                                                         Throwable throttling, int attempt) {
+        metrics.count(THROTTLED);
+        if (attempt >= MAX_RETRIES) {
+            bucket.onFailure(true);
+            return new CognitoThrottledException(STILL_THROTTLED,
+                    toRetryAfterSeconds(TimeUnit.MILLISECONDS.toNanos(MAX_BACKOFF_MILLIS)), throttling);
+        }
+
+        metrics.count(RETRIED);
+        bucket.onThrottled();
+        return null;
+    }
+
+    private static <T> CompletableFuture<T> send(Supplier<CompletableFuture<T>> call) {
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Counters per category: throttled responses, retries, calls that had to wait for a token,
+     * calls rejected after waiting too long, and the current admitted rate.
+     */
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        buckets.forEach((category, bucket) -> {
+            String prefix = category.name() + ".";
+            metrics.put(prefix + "throttled", bucket.throttled.get());
+            metrics.put(prefix + "retried", bucket.retried.get());
+            metrics.put(prefix + "queued", bucket.queued.get());
+            metrics.put(prefix + "rejected", bucket.rejected.get());
+            metrics.put(prefix + "ratePerSecond", bucket.getRate());
+        });
+        return metrics;
+    }
+
+    static boolean isThrottling(Throwable throwable) {
+        return throwable instanceof TooManyRequestsException
+                || (throwable instanceof AwsServiceException && ((AwsServiceException) throwable).isThrottlingException());
+    }
+
+    static long toRetryAfterSeconds(long nanos) {
+        return Math.max(1, (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static long backoffMillis(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << attempt);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while backing off from Cognito throttling", e);
+        }
+    }
+
+    /**
+     * Token bucket with an AIMD-adjusted refill rate: cut on throttling, raised again slowly on success.
+     */
+    static final class TokenBucket {
+
+        private static final double DECREASE_FACTOR = 0.7;
+        private static final double MIN_RATE_FRACTION = 0.1;
+
+        private final double maxRate;
+        private double rate;
+        private double tokens;
+        private long lastRefillNanos;
+
+        final AtomicLong throttled = new AtomicLong();
+        final AtomicLong retried = new AtomicLong();
+        final AtomicLong queued = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+
+        TokenBucket(double requestsPerSecond) {
+            this.maxRate = requestsPerSecond;
+            this.rate = requestsPerSecond;
+            this.tokens = requestsPerSecond;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        // Returns how long the caller must wait for its token; throws when it would wait too long
+        long tryReserve() {
+            long waitNanos = reserve();
+            if (waitNanos <= 0) {
+                return 0;
+            }
+
+            queued.incrementAndGet();
+            long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(MAX_QUEUE_WAIT_MILLIS);
+            if (waitNanos > maxWaitNanos) {
+                release();
+                rejected.incrementAndGet();
+                // Tried again after this long, the wait fits in the queue again
+                throw new CognitoThrottledException(RATE_LIMIT_REACHED, toRetryAfterSeconds(waitNanos - maxWaitNanos));
+            }
+            return waitNanos;
+        }
+
+        // Takes a token, possibly going into debt; returns how long the caller must wait for it
+        private synchronized long reserve() {
+            refill();
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+        }
+
+        private synchronized void release() {
+            tokens += 1;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(rate, tokens + (now - lastRefillNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+            lastRefillNanos = now;
+        }
+
+        synchronized void onSuccess() {
+            if (rate < maxRate) {
+                rate = Math.min(maxRate, rate + maxRate * 0.01);
+            }
+        }
+
+        synchronized void onThrottled() {
+            throttled.incrementAndGet();
+            retried.incrementAndGet();
+            decrease();
+        }
+
+        synchronized void onFailure(boolean wasThrottled) {
+            if (wasThrottled) {
+                throttled.incrementAndGet();
+                decrease();
+            }
+        }
+
+        synchronized double getRate() {
+            return rate;
+        }
+
+        private void decrease() {
+            refill();
+            rate = Math.max(maxRate * MIN_RATE_FRACTION, rate * DECREASE_FACTOR);
+            tokens = Math.min(tokens, rate);
+        }
+    }
+}
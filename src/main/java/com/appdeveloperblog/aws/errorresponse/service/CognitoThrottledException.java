@@ -0,0 +1,28 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+/**
+ * A Cognito call given up on because of throttling: {@link CognitoRateLimiter} had no permit for it within its
+ * queue wait, or Cognito still answered with a throttling error after the last retry. Handlers answer it with
+ * 429 Too Many Requests and a Retry-After header.
+ */
+public class CognitoThrottledException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public CognitoThrottledException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public CognitoThrottledException(String message, long retryAfterSeconds, Throwable cause) {
+        super(message, cause);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Whole seconds, at least 1, after which the call may be tried again.
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
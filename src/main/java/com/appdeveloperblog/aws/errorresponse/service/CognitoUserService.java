@@ -1,33 +1,334 @@
 package com.appdeveloperblog.aws.errorresponse.service;
 
+import com.appdeveloperblog.aws.errorresponse.service.CognitoLatencyRecorder.Operation;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoLatencyRecorder.Outcome;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoRateLimiter.OperationCategory;
 import com.appdeveloperblog.aws.errorresponse.shared.Constants;
+import com.appdeveloperblog.aws.errorresponse.shared.InvocationMetrics;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderAsyncClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.*;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 public class CognitoUserService {
 
     private final CognitoIdentityProviderClient cognitoIdentityProviderClient;
+    // Only built when one of the *Async methods is used
+    private final Supplier<CognitoIdentityProviderAsyncClient> cognitoIdentityProviderAsyncClient;
+    private final SecretHashCalculator secretHashCalculator = SecretHashCalculator.fromEnvironment();
+    private final CognitoRateLimiter rateLimiter;
+    private final UserCache userCache;
+    private final AccessTokenUserCache accessTokenUserCache;
+    private final CognitoLatencyRecorder latencyRecorder;
 
     public CognitoUserService(String region) {
-        this.cognitoIdentityProviderClient = CognitoIdentityProviderClient.builder()
+        this(CognitoIdentityProviderClient.builder()
                 .region(Region.of(region))
-                .build();
+                .credentialsProvider(AwsClientFactory.getCredentialsProvider())
+                .httpClient(AwsClientFactory.getHttpClient())
+                .overrideConfiguration(AwsClientFactory.getCognitoOverrideConfiguration())
+                .build());
     }
 
     public CognitoUserService(CognitoIdentityProviderClient cognitoIdentityProviderClient) {
+        this(cognitoIdentityProviderClient, AwsClientFactory::getCognitoAsyncClient, CognitoRateLimiter.shared(),
+                UserCache.shared(), AccessTokenUserCache.shared(), CognitoLatencyRecorder.shared());
+    }
+
+    public CognitoUserService(CognitoIdentityProviderClient cognitoIdentityProviderClient,
+                              CognitoIdentityProviderAsyncClient cognitoIdentityProviderAsyncClient) {
+        this(cognitoIdentityProviderClient, () -> cognitoIdentityProviderAsyncClient, CognitoRateLimiter.shared(),
+                UserCache.shared(), AccessTokenUserCache.shared(), CognitoLatencyRecorder.shared());
+    }
+
+    /**
+     * Service with its own rate limiter, caches and latency recorder instead of the process-wide ones, so its
+     * calls leave no trace in the state the handlers share.
+     */
+    public CognitoUserService(CognitoIdentityProviderClient cognitoIdentityProviderClient,
+                              CognitoRateLimiter rateLimiter,
+                              UserCache userCache,
+                              AccessTokenUserCache accessTokenUserCache,
+                              CognitoLatencyRecorder latencyRecorder) {
+        this(cognitoIdentityProviderClient, AwsClientFactory::getCognitoAsyncClient, rateLimiter, userCache,
+                accessTokenUserCache, latencyRecorder);
+    }
+
+    private CognitoUserService(CognitoIdentityProviderClient cognitoIdentityProviderClient,
+                               Supplier<CognitoIdentityProviderAsyncClient> cognitoIdentityProviderAsyncClient,
+                               CognitoRateLimiter rateLimiter,
+                               UserCache userCache,
+                               AccessTokenUserCache accessTokenUserCache,
+                               CognitoLatencyRecorder latencyRecorder) {
         this.cognitoIdentityProviderClient = cognitoIdentityProviderClient;
+        this.cognitoIdentityProviderAsyncClient = cognitoIdentityProviderAsyncClient;
+        this.rateLimiter = rateLimiter;
+        this.userCache = userCache;
+        this.accessTokenUserCache = accessTokenUserCache;
+        this.latencyRecorder = latencyRecorder;
     }
 
     public JsonObject createUser(JsonObject storedUserDetails, String appClientId, String appClientSecret) {
 
+        SignUpRequest signUpRequest = buildSignUpRequest(storedUserDetails, appClientId, appClientSecret);
+
+        // Call signup API and return Sign up response; can generate RunTime exception, handled in CreateUserHandler
+        SignUpResponse signUpResponse = execute(OperationCategory.USER_CREATION, Operation.SIGN_UP,
+                () -> cognitoIdentityProviderClient.signUp(signUpRequest));
+        userCache.invalidate(signUpRequest.username());
+
+        return toCreateUserResult(signUpResponse);
+    }
+
+    public CompletableFuture<JsonObject> createUserAsync(JsonObject storedUserDetails, String appClientId,
+                                                         String appClientSecret) {
+
+        SignUpRequest signUpRequest = buildSignUpRequest(storedUserDetails, appClientId, appClientSecret);
+
+        return executeAsync(OperationCategory.USER_CREATION, Operation.SIGN_UP,
+                        () -> cognitoIdentityProviderAsyncClient.get().signUp(signUpRequest))
+                .thenApply(signUpResponse -> {
+                    userCache.invalidate(signUpRequest.username());
+                    return toCreateUserResult(signUpResponse);
+                });
+    }
+
+    public JsonObject confirmUserSignUp(String userPoolClientId,
+                                        String userPoolClientSecret,
+                                        String userName,
+                                        String confirmationCode) {
+
+        ConfirmSignUpRequest confirmSignUpRequest = buildConfirmSignUpRequest(userPoolClientId, userPoolClientSecret,
+                userName, confirmationCode);
+
+        ConfirmSignUpResponse confirmSignUpResponse = execute(OperationCategory.USER_AUTHENTICATION,
+                Operation.CONFIRM_SIGN_UP,
+                () -> cognitoIdentityProviderClient.confirmSignUp(confirmSignUpRequest));
+        userCache.invalidate(userName);
+
+        return toConfirmUserResult(confirmSignUpResponse);
+
+    }
+
+    public CompletableFuture<JsonObject> confirmUserSignUpAsync(String userPoolClientId,
+                                                                String userPoolClientSecret,
+                                                                String userName,
+                                                                String confirmationCode) {
+
+        ConfirmSignUpRequest confirmSignUpRequest = buildConfirmSignUpRequest(userPoolClientId, userPoolClientSecret,
+                userName, confirmationCode);
+
+        return executeAsync(OperationCategory.USER_AUTHENTICATION, Operation.CONFIRM_SIGN_UP,
+                        () -> cognitoIdentityProviderAsyncClient.get().confirmSignUp(confirmSignUpRequest))
+                .thenApply(confirmSignUpResponse -> {
+                    userCache.invalidate(userName);
+                    return toConfirmUserResult(confirmSignUpResponse);
+                });
+    }
+
+    public JsonObject loginUser(String username, String password, String userPoolClientId,
+                                String userPoolClientSecret) {
+
+        InitiateAuthRequest initialRequest = buildInitiateAuthRequest(username, password, userPoolClientId,
+                userPoolClientSecret);
+
+        InitiateAuthResponse authResponse = execute(OperationCategory.USER_AUTHENTICATION, Operation.INITIATE_AUTH,
+                () -> cognitoIdentityProviderClient.initiateAuth(initialRequest));
+
+        return toLoginUserResult(authResponse);
+
+
+    }
+
+    public CompletableFuture<JsonObject> loginUserAsync(String username, String password, String userPoolClientId,
+                                                        String userPoolClientSecret) {
+
+        InitiateAuthRequest initialRequest = buildInitiateAuthRequest(username, password, userPoolClientId,
+                userPoolClientSecret);
+
+        return executeAsync(OperationCategory.USER_AUTHENTICATION, Operation.INITIATE_AUTH,
+                        () -> cognitoIdentityProviderAsyncClient.get().initiateAuth(initialRequest))
+                .thenApply(CognitoUserService::toLoginUserResult);
+    }
+
+    public JsonObject addUserToGroup(String groupName, String username, String userPoolId) {
+
+        AdminAddUserToGroupRequest addUserToGroupRequest = buildAddUserToGroupRequest(groupName, username, userPoolId);
+
+        AdminAddUserToGroupResponse addUserToGroupResponse = execute(OperationCategory.USER_RESOURCE_UPDATE,
+                Operation.ADMIN_ADD_USER_TO_GROUP,
+                () -> cognitoIdentityProviderClient.adminAddUserToGroup(addUserToGroupRequest));
+        userCache.invalidate(username);
+
+        return toAddUserToGroupResult(addUserToGroupResponse);
+
+    }
+
+    public CompletableFuture<JsonObject> addUserToGroupAsync(String groupName, String username, String userPoolId) {
+
+        AdminAddUserToGroupRequest addUserToGroupRequest = buildAddUserToGroupRequest(groupName, username, userPoolId);
+
+        return executeAsync(OperationCategory.USER_RESOURCE_UPDATE, Operation.ADMIN_ADD_USER_TO_GROUP,
+                        () -> cognitoIdentityProviderAsyncClient.get().adminAddUserToGroup(addUserToGroupRequest))
+                .thenApply(addUserToGroupResponse -> {
+                    userCache.invalidate(username);
+                    return toAddUserToGroupResult(addUserToGroupResponse);
+                });
+    }
+
+    public JsonObject getUser(String accessToken) {
+        boolean[] loaded = new boolean[1];
+        JsonObject user = accessTokenUserCache.get(accessToken, () -> {
+            loaded[0] = true;
+            GetUserRequest userRequest = GetUserRequest.builder()
+                    .accessToken(accessToken)
+                    .build();
+
+            GetUserResponse getUserResponse = execute(OperationCategory.USER_ACCOUNT_READ, Operation.GET_USER,
+                    () -> cognitoIdentityProviderClient.getUser(userRequest));
+
+            return toGetUserResult(getUserResponse);
+        });
+        InvocationMetrics.current().count(loaded[0] ? "AccessTokenCache.Miss" : "AccessTokenCache.Hit");
+        return user;
+    }
+
+    public CompletableFuture<JsonObject> getUserAsync(String accessToken) {
+        return accessTokenUserCache.getAsync(accessToken, () -> {
+            GetUserRequest userRequest = GetUserRequest.builder()
+                    .accessToken(accessToken)
+                    .build();
+
+            return executeAsync(OperationCategory.USER_ACCOUNT_READ, Operation.GET_USER,
+                            () -> cognitoIdentityProviderAsyncClient.get().getUser(userRequest))
+                    .thenApply(CognitoUserService::toGetUserResult);
+        });
+    }
+
+    public String calculateSecretHash(String userPoolClientId, String userPoolClientSecret, String userName) {
+        long start = System.nanoTime();
+        String secretHash = secretHashCalculator.calculate(userPoolClientId, userPoolClientSecret, userName);
+        InvocationMetrics.current().recordStage("SecretHash", start);
+        return secretHash;
+    }
+
+    public JsonObject getUserByUsername(String username, String poolId) {
+
+        boolean[] loaded = new boolean[1];
+        JsonObject user = userCache.get(poolId, username, () -> {
+            loaded[0] = true;
+            AdminGetUserRequest adminGetUserRequest = AdminGetUserRequest.builder()
+                    .username(username)
+                    .userPoolId(poolId)
+                    .build();
+
+            AdminGetUserResponse adminGetUserResponse = execute(OperationCategory.USER_ACCOUNT_READ,
+                    Operation.ADMIN_GET_USER,
+                    () -> cognitoIdentityProviderClient.adminGetUser(adminGetUserRequest));
+
+            return toUserDetails(adminGetUserResponse);
+        });
+        InvocationMetrics.current().count(loaded[0] ? "UserCache.Miss" : "UserCache.Hit");
+        return user;
+    }
+
+    public Map<String, Number> getUserCacheStats() {
+        return userCache.getStats();
+    }
+
+    public Map<String, Number> getAccessTokenCacheStats() {
+        return accessTokenUserCache.getStats();
+    }
+
+    public CognitoLatencyRecorder.Snapshot getLatencySnapshot() {
+        return latencyRecorder.snapshot();
+    }
+
+    public CompletableFuture<JsonObject> getUserByUsernameAsync(String username, String poolId) {
+
+        return userCache.getAsync(poolId, username, () -> {
+            AdminGetUserRequest adminGetUserRequest = AdminGetUserRequest.builder()
+                    .username(username)
+                    .userPoolId(poolId)
+                    .build();
+
+            return executeAsync(OperationCategory.USER_ACCOUNT_READ, Operation.ADMIN_GET_USER,
+                            () -> cognitoIdentityProviderAsyncClient.get().adminGetUser(adminGetUserRequest))
+                    .thenApply(CognitoUserService::toUserDetails);
+        });
+    }
+
+    // Rate limited call, timed (including waiting for a permit) as a stage of the current invocation and in the
+    // process-wide latency histograms
+    private <T> T execute(OperationCategory category, Operation operation, Supplier<T> call) {
+        InvocationMetrics metrics = InvocationMetrics.current();
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            T result = rateLimiter.execute(category, call);
+            outcome = Outcome.SUCCESS;
+            return result;
+        } catch (RuntimeException e) {
+            // Also client side failures: SdkClientException, ApiCallTimeoutException, a rejected rate limiter permit
+            outcome = toOutcome(e);
+            metrics.errorCode(toErrorCode(e));
+            throw e;
+        } finally {
+            metrics.recordStage(operation.getMetricName(), start);
+            latencyRecorder.record(operation, outcome, System.nanoTime() - start);
+        }
+    }
+
+    // Same as execute; the invocation's metrics are taken here, on the handler thread, because the call
+    // completes on an SDK thread that has no current invocation
+    private <T> CompletableFuture<T> executeAsync(OperationCategory category, Operation operation,
+                                                  Supplier<CompletableFuture<T>> call) {
+        InvocationMetrics metrics = InvocationMetrics.current();
+        long start = System.nanoTime();
+        return rateLimiter.executeAsync(category, call)
+                .whenComplete((result, throwable) -> {
+                    Outcome outcome = Outcome.SUCCESS;
+                    if (throwable != null) {
+                        Throwable cause = unwrap(throwable);
+                        outcome = toOutcome(cause);
+                        metrics.errorCode(toErrorCode(cause));
+                    }
+                    metrics.recordStage(operation.getMetricName(), start);
+                    latencyRecorder.record(operation, outcome, System.nanoTime() - start);
+                });
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+    }
+
+    private static String toErrorCode(Throwable throwable) {
+        if (throwable instanceof AwsServiceException && ((AwsServiceException) throwable).awsErrorDetails() != null) {
+            return ((AwsServiceException) throwable).awsErrorDetails().errorCode();
+        }
+        return throwable.getClass().getSimpleName();
+    }
+
+    private static Outcome toOutcome(Throwable throwable) {
+        return throwable instanceof CognitoThrottledException || CognitoRateLimiter.isThrottling(throwable)
+                ? Outcome.THROTTLED
+                : Outcome.ERROR;
+    }
+
+    // Requests and results are shared by the blocking and the async variants so both return the same shape
+
+    private SignUpRequest buildSignUpRequest(JsonObject storedUserDetails, String appClientId, String appClientSecret) {
+
         String email = storedUserDetails.get("email").getAsString();
         String password = storedUserDetails.get("password").getAsString();
         String username = storedUserDetails.get("username").getAsString();
@@ -58,17 +359,16 @@ public class CognitoUserService {
         String generatedSecretHash = calculateSecretHash(appClientId, appClientSecret, username);
 
         // Sign up request
-        SignUpRequest signUpRequest = SignUpRequest.builder()
+        return SignUpRequest.builder()
                 .username(username)
                 .password(password)
                 .userAttributes(attributeTypeList)
                 .clientId(appClientId)
                 .secretHash(generatedSecretHash)
                 .build();
+    }
 
-        // Call signup API and return Sign up response; can generate RunTime exception, handled in CreateUserHandler
-        SignUpResponse signUpResponse = cognitoIdentityProviderClient.signUp(signUpRequest);
-
+    private static JsonObject toCreateUserResult(SignUpResponse signUpResponse) {
         JsonObject createUserResult = new JsonObject();
         createUserResult.addProperty(Constants.IS_SUCCESSFUL, signUpResponse.sdkHttpResponse().isSuccessful());
         createUserResult.addProperty(Constants.STATUS_CODE, signUpResponse.sdkHttpResponse().statusCode());
@@ -78,32 +378,30 @@ public class CognitoUserService {
         return createUserResult;
     }
 
-    public JsonObject confirmUserSignUp(String userPoolClientId,
-                                        String userPoolClientSecret,
-                                        String userName,
-                                        String confirmationCode) {
-
+    private ConfirmSignUpRequest buildConfirmSignUpRequest(String userPoolClientId,
+                                                           String userPoolClientSecret,
+                                                           String userName,
+                                                           String confirmationCode) {
 
         String generatedSecretHash = calculateSecretHash(userPoolClientId, userPoolClientSecret, userName);
 
-        ConfirmSignUpRequest confirmSignUpRequest = ConfirmSignUpRequest.builder()
+        return ConfirmSignUpRequest.builder()
                 .username(userName)
                 .secretHash(generatedSecretHash)
                 .confirmationCode(confirmationCode)
                 .clientId(userPoolClientId)
                 .build();
+    }
 
-        ConfirmSignUpResponse confirmSignUpResponse = cognitoIdentityProviderClient.confirmSignUp(confirmSignUpRequest);
-
+    private static JsonObject toConfirmUserResult(ConfirmSignUpResponse confirmSignUpResponse) {
         JsonObject confirmUserResponse = new JsonObject();
         confirmUserResponse.addProperty("isSuccessful", confirmSignUpResponse.sdkHttpResponse().isSuccessful());
         confirmUserResponse.addProperty("statusCode", confirmSignUpResponse.sdkHttpResponse().statusCode());
         return confirmUserResponse;
-
     }
 
-    public JsonObject loginUser(String username, String password, String userPoolClientId,
-                                String userPoolClientSecret) {
+    private InitiateAuthRequest buildInitiateAuthRequest(String username, String password, String userPoolClientId,
+                                                         String userPoolClientSecret) {
 
         String generatedSecretHash = calculateSecretHash(userPoolClientId, userPoolClientSecret, username);
 
@@ -113,13 +411,14 @@ public class CognitoUserService {
         params.put("PASSWORD", password);
         params.put("SECRET_HASH", generatedSecretHash);
 
-        InitiateAuthRequest initialRequest = InitiateAuthRequest.builder()
+        return InitiateAuthRequest.builder()
                 .clientId(userPoolClientId)
                 .authFlow(AuthFlowType.USER_PASSWORD_AUTH)
                 .authParameters(params)
                 .build();
+    }
 
-        InitiateAuthResponse authResponse = cognitoIdentityProviderClient.initiateAuth(initialRequest);
+    private static JsonObject toLoginUserResult(InitiateAuthResponse authResponse) {
         AuthenticationResultType authenticationResultType = authResponse.authenticationResult();
 
 
@@ -131,38 +430,27 @@ public class CognitoUserService {
         loginUserResult.addProperty("refreshToken", authenticationResultType.refreshToken());
 
         return loginUserResult;
-
-
     }
 
-    public JsonObject addUserToGroup(String groupName, String username, String userPoolId) {
-
-        AdminAddUserToGroupRequest addUserToGroupRequest = AdminAddUserToGroupRequest.builder()
+    private static AdminAddUserToGroupRequest buildAddUserToGroupRequest(String groupName, String username,
+                                                                         String userPoolId) {
+        return AdminAddUserToGroupRequest.builder()
                 .groupName(groupName)
                 .username(username)
                 .userPoolId(userPoolId)
                 .build();
+    }
 
-        AdminAddUserToGroupResponse addUserToGroupResponse = cognitoIdentityProviderClient
-                .adminAddUserToGroup(addUserToGroupRequest);
-
-
+    private static JsonObject toAddUserToGroupResult(AdminAddUserToGroupResponse addUserToGroupResponse) {
         JsonObject addUserToGroupResult = new JsonObject();
 
         addUserToGroupResult.addProperty("isSuccessful", addUserToGroupResponse.sdkHttpResponse().isSuccessful());
         addUserToGroupResult.addProperty("statusCode", addUserToGroupResponse.sdkHttpResponse().statusCode());
 
         return addUserToGroupResult;
-
     }
 
-    public JsonObject getUser(String accessToken) {
-        GetUserRequest userRequest = GetUserRequest.builder()
-                .accessToken(accessToken)
-                .build();
-
-        GetUserResponse getUserResponse = cognitoIdentityProviderClient.getUser(userRequest);
-
+    private static JsonObject toGetUserResult(GetUserResponse getUserResponse) {
         JsonObject getUserResult = new JsonObject();
 
         getUserResult.addProperty("isSuccessful", getUserResponse.sdkHttpResponse().isSuccessful());
@@ -176,33 +464,7 @@ public class CognitoUserService {
         return getUserResult;
     }
 
-    public String calculateSecretHash(String userPoolClientId, String userPoolClientSecret, String userName) {
-        final String HMAC_SHA256_ALGORITHM = "HmacSHA256";
-
-        SecretKeySpec signingKey = new SecretKeySpec(
-                userPoolClientSecret.getBytes(StandardCharsets.UTF_8),
-                HMAC_SHA256_ALGORITHM);
-        try {
-            Mac mac = Mac.getInstance(HMAC_SHA256_ALGORITHM);
-            mac.init(signingKey);
-            mac.update(userName.getBytes(StandardCharsets.UTF_8));
-            byte[] rawHmac = mac.doFinal(userPoolClientId.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(rawHmac);
-        } catch (Exception e) {
-            throw new RuntimeException("Error while calculating ");
-        }
-    }
-
-    public JsonObject getUserByUsername(String username, String poolId) {
-
-
-        AdminGetUserRequest adminGetUserRequest = AdminGetUserRequest.builder()
-                .username(username)
-                .userPoolId(poolId)
-                .build();
-
-        AdminGetUserResponse adminGetUserResponse = cognitoIdentityProviderClient.adminGetUser(adminGetUserRequest);
-
+    private static JsonObject toUserDetails(AdminGetUserResponse adminGetUserResponse) {
         JsonObject userDetails = new JsonObject();
 
         if (!adminGetUserResponse.sdkHttpResponse().isSuccessful()) {
@@ -217,6 +479,5 @@ public class CognitoUserService {
         });
 
         return userDetails;
-
     }
 }
@@ -0,0 +1,121 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.appdeveloperblog.aws.errorresponse.shared.Constants;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Adds many (username, groupName) pairs to their groups with {@link CognitoUserService#addUserToGroupAsync},
+ * keeping at most {@code maxConcurrency} calls in flight. A failing pair does not stop the others; its
+ * result carries the error instead.
+ */
+public class GroupMembershipBatch {
+
+    private final CognitoUserService cognitoUserService;
+    private final int maxConcurrency;
+
+    public GroupMembershipBatch(CognitoUserService cognitoUserService, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        this.cognitoUserService = cognitoUserService;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @param memberships array of objects with username and groupName properties
+     * @return one result per membership, in the same order
+     */
+    public JsonArray addUsersToGroups(JsonArray memberships, String userPoolId) {
+
+        Semaphore inFlight = new Semaphore(maxConcurrency);
+        List<CompletableFuture<JsonObject>> results = new ArrayList<>(memberships.size());
+
+        for (int i = 0; i < memberships.size(); i++) {
+            final int index = i;
+            JsonElement membership = memberships.get(i);
+
+            String username;
+            String groupName;
+            try {
+                username = getRequiredString(membership, "username");
+                groupName = getRequiredString(membership, "groupName");
+            } catch (RuntimeException e) {
+                results.add(CompletableFuture.completedFuture(failure(index, null, null, 400, e.getMessage())));
+                continue;
+            }
+
+            inFlight.acquireUninterruptibly();
+            CompletableFuture<JsonObject> result;
+            try {
+                result = cognitoUserService.addUserToGroupAsync(groupName, username, userPoolId);
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+
+            results.add(result
+                    .handle((addUserToGroupResult, throwable) -> throwable == null
+                            ? success(index, username, groupName, addUserToGroupResult)
+                            : failure(index, username, groupName, throwable))
+                    .whenComplete((ignored, throwable) -> inFlight.release()));
+        }
+
+        JsonArray batchResult = new JsonArray(results.size());
+        results.forEach(result -> batchResult.add(result.join()));
+        return batchResult;
+    }
+
+    private static String getRequiredString(JsonElement membership, String property) {
+        if (!membership.isJsonObject()) {
+            throw new IllegalArgumentException("Membership is not a JSON object");
+        }
+        JsonElement value = membership.getAsJsonObject().get(property);
+        if (value == null || !value.isJsonPrimitive() || value.getAsString().isBlank()) {
+            throw new IllegalArgumentException("Missing required field: " + property);
+        }
+        return value.getAsString();
+    }
+
+    private static JsonObject success(int index, String username, String groupName, JsonObject addUserToGroupResult) {
+        JsonObject result = addUserToGroupResult.deepCopy();
+        result.addProperty("index", index);
+        result.addProperty("username", username);
+        result.addProperty("groupName", groupName);
+        return result;
+    }
+
+    private static JsonObject failure(int index, String username, String groupName, Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+
+        if (cause instanceof CognitoThrottledException) {
+            return failure(index, username, groupName, 429, cause.getMessage());
+        }
+        if (cause instanceof AwsServiceException && ((AwsServiceException) cause).awsErrorDetails() != null) {
+            AwsServiceException awsServiceException = (AwsServiceException) cause;
+            return failure(index, username, groupName, awsServiceException.statusCode(),
+                    awsServiceException.awsErrorDetails().errorMessage());
+        }
+        return failure(index, username, groupName, 500, cause.getMessage());
+    }
+
+    private static JsonObject failure(int index, String username, String groupName, int statusCode, String message) {
+        JsonObject result = new JsonObject();
+        result.addProperty("index", index);
+        result.addProperty("username", username);
+        result.addProperty("groupName", groupName);
+        result.addProperty(Constants.IS_SUCCESSFUL, false);
+        result.addProperty(Constants.STATUS_CODE, statusCode);
+        result.addProperty("message", message);
+        return result;
+    }
+}
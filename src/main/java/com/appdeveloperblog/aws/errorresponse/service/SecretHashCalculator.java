@@ -0,0 +1,138 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Calculates the SECRET_HASH Cognito expects for app clients with a client secret.
+ * <p>
+ * The JCA provider lookup and key setup are done once per client secret; every thread then works on
+ * its own initialised copy of the {@link Mac} and its own input buffer. Optionally the resulting hashes
+ * are memoized per (client id, username) in a bounded cache.
+ */
+public class SecretHashCalculator {
+
+    private static final String HMAC_SHA256_ALGORITHM = "HmacSHA256";
+    private static final int BUFFER_SIZE = 512;
+
+    // Initialised Mac per client secret, cloned for each thread that needs it
+    private static final ConcurrentMap<String, Mac> PROTOTYPES = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Map<String, Mac>> THREAD_MACS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<ByteBuffer> THREAD_BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(BUFFER_SIZE));
+    private static final ThreadLocal<CharsetEncoder> THREAD_ENCODERS =
+            ThreadLocal.withInitial(StandardCharsets.UTF_8::newEncoder);
+
+    private final Cache<String, String> memoizedHashes;
+
+    public SecretHashCalculator() {
+        this(0);
+    }
+
+    /**
+     * @param maximumMemoizedHashes number of hashes to keep; 0 disables memoization
+     */
+    public SecretHashCalculator(long maximumMemoizedHashes) {
+        this.memoizedHashes = maximumMemoizedHashes > 0
+                ? CacheBuilder.newBuilder().maximumSize(maximumMemoizedHashes).build()
+                : null;
+    }
+
+    /**
+     * Reads the number of hashes to memoize from SECRET_HASH_CACHE_SIZE (defaults to no memoization).
+     */
+    public static SecretHashCalculator fromEnvironment() {
+        String cacheSize = System.getenv("SECRET_HASH_CACHE_SIZE");
+        return new SecretHashCalculator(cacheSize == null || cacheSize.isBlank() ? 0 : Long.parseLong(cacheSize.trim()));
+    }
+
+    /**
+     * Drops the Mac set up for the secret, from the shared prototypes and from the calling thread.
+     */
+    public static void evict(String userPoolClientSecret) {
+        PROTOTYPES.remove(userPoolClientSecret);
+        THREAD_MACS.get().remove(userPoolClientSecret);
+    }
+
+    public String calculate(String userPoolClientId, String userPoolClientSecret, String userName) {
+        if (memoizedHashes == null) {
+            return computeHash(userPoolClientId, userPoolClientSecret, userName);
+        }
+
+        String key = userPoolClientId + '\u0000' + userPoolClientSecret + '\u0000' + userName;
+        String hash = memoizedHashes.getIfPresent(key);
+        if (hash == null) {
+            hash = computeHash(userPoolClientId, userPoolClientSecret, userName);
+            memoizedHashes.put(key, hash);
+        }
+        return hash;
+    }
+
+    private static String computeHash(String userPoolClientId, String userPoolClientSecret, String userName) {
+        try {
+            Mac mac = THREAD_MACS.get().computeIfAbsent(userPoolClientSecret, SecretHashCalculator::newThreadMac);
+            update(mac, userName);
+            update(mac, userPoolClientId);
+            // doFinal also resets the Mac for the next call on this thread
+            return Base64.getEncoder().encodeToString(mac.doFinal());
+        } catch (Exception e) {
+            throw new RuntimeException("Error while calculating secret hash", e);
+        }
+    }
+
+    private static Mac newThreadMac(String userPoolClientSecret) {
+        Mac prototype = PROTOTYPES.computeIfAbsent(userPoolClientSecret, SecretHashCalculator::newMac);
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            return newMac(userPoolClientSecret);
+        }
+    }
+
+    private static Mac newMac(String userPoolClientSecret) {
+        SecretKeySpec signingKey = new SecretKeySpec(
+                userPoolClientSecret.getBytes(StandardCharsets.UTF_8),
+                HMAC_SHA256_ALGORITHM);
+        try {
+            Mac mac = Mac.getInstance(HMAC_SHA256_ALGORITHM);
+            mac.init(signingKey);
+            return mac;
+        } catch (Exception e) {
+            throw new RuntimeException("Error while initialising " + HMAC_SHA256_ALGORITHM, e);
+        }
+    }
+
+    private static void update(Mac mac, String value) {
+        ByteBuffer buffer = THREAD_BUFFERS.get();
+        CharsetEncoder encoder = THREAD_ENCODERS.get();
+
+        buffer.clear();
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(value), buffer, true);
+        if (result.isUnderflow()) {
+            result = encoder.flush(buffer);
+        }
+
+        if (result.isUnderflow()) {
+            buffer.flip();
+            mac.update(buffer);
+        } else {
+            // Longer than the reusable buffer or not encodable as is, take the allocating path
+            mac.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
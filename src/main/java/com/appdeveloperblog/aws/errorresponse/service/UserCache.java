@@ -0,0 +1,140 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.appdeveloperblog.aws.errorresponse.shared.EnvironmentVariables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.gson.JsonObject;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, TTL based read-through cache for the user details returned by
+ * {@link CognitoUserService#getUserByUsername} and {@link CognitoUserService#getUserByUsernameAsync},
+ * keyed by (poolId, username).
+ * <p>
+ * Entries are dropped when this container changes the user (sign up, confirmation, group membership).
+ * Changes made elsewhere become visible once the entry expires. Size and TTL are read from
+ * USER_CACHE_MAX_SIZE (default 1000) and USER_CACHE_TTL_SECONDS (default 60); a size of 0 disables caching.
+ */
+public class UserCache {
+
+    private static final UserCache SHARED = fromEnvironment();
+
+    private final Cache<Key, JsonObject> users;
+    // Bumped by every invalidation, so loads that started before it do not store what they read
+    private final AtomicLong generation = new AtomicLong();
+
+    public UserCache(long maximumSize, Duration ttl) {
+        this.users = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public static UserCache shared() {
+        return SHARED;
+    }
+
+    public static UserCache fromEnvironment() {
+        return new UserCache(
+                EnvironmentVariables.getLong("USER_CACHE_MAX_SIZE", 1000),
+                Duration.ofSeconds(EnvironmentVariables.getLong("USER_CACHE_TTL_SECONDS", 60)));
+    }
+
+    public JsonObject get(String poolId, String username, Supplier<JsonObject> loader) {
+        Key key = new Key(poolId, username);
+        JsonObject cachedUser = users.getIfPresent(key);
+        if (cachedUser != null) {
+            // Copies keep callers from modifying the cached object
+            return cachedUser.deepCopy();
+        }
+
+        long observedGeneration = generation.get();
+        return put(key, observedGeneration, loader.get());
+    }
+
+    /**
+     * Variant of {@link #get} for loaders that do not block; the entry is stored once the loader completes.
+     */
+    public CompletableFuture<JsonObject> getAsync(String poolId, String username,
+                                                  Supplier<CompletableFuture<JsonObject>> loader) {
+        Key key = new Key(poolId, username);
+        JsonObject cachedUser = users.getIfPresent(key);
+        if (cachedUser != null) {
+            return CompletableFuture.completedFuture(cachedUser.deepCopy());
+        }
+
+        long observedGeneration = generation.get();
+        return loader.get().thenApply(user -> put(key, observedGeneration, user));
+    }
+
+    // A load that overlapped an invalidation may have read the user before the change, so it is not kept
+    private JsonObject put(Key key, long observedGeneration, JsonObject user) {
+        JsonObject cachedUser = user.deepCopy();
+        synchronized (generation) {
+            if (generation.get() == observedGeneration) {
+                users.put(key, cachedUser);
+            }
+        }
+        return user;
+    }
+
+    public void invalidate(String username) {
+        synchronized (generation) {
+            generation.incrementAndGet();
+            users.asMap().keySet().removeIf(key -> Objects.equals(key.username, username));
+        }
+    }
+
+    public void invalidateAll() {
+        users.invalidateAll();
+    }
+
+    public Map<String, Number> getStats() {
+        CacheStats stats = users.stats();
+
+        Map<String, Number> cacheStats = new LinkedHashMap<>();
+        cacheStats.put("size", users.size());
+        cacheStats.put("hitCount", stats.hitCount());
+        cacheStats.put("missCount", stats.missCount());
+        cacheStats.put("hitRate", stats.hitRate());
+        cacheStats.put("evictionCount", stats.evictionCount());
+        return cacheStats;
+    }
+
+    private static final class Key {
+        private final String poolId;
+        private final String username;
+
+        private Key(String poolId, String username) {
+            this.poolId = poolId;
+            this.username = username;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(poolId, key.poolId) && Objects.equals(username, key.username);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(poolId, username);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTDecodeException;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+
+/**
+ * Keys of the verified claims that LambdaAuthorizer passes to downstream handlers through
+ * {@code requestContext.authorizer}, and helpers to read them back.
+ * <p>
+ * With USER_FROM_AUTHORIZER_CONTEXT=true the user handlers answer from these claims instead of calling Cognito.
+ * The user object then only holds the attributes that are ID token claims: sub, name, email and custom:userid.
+ * Cognito returns every readable attribute (email_verified, for example), so leave the flag off for clients
+ * that need those.
+ */
+public class AuthorizerContext {
+
+    public static final String SUB = "sub";
+    public static final String USERNAME = "username";
+    public static final String NAME = "name";
+    public static final String EMAIL = "email";
+    public static final String GROUPS = "groups";
+    public static final String USER_ID = "custom:userid";
+
+    // Claims that are also Cognito user attributes, in the same format GetUser/AdminGetUser return them
+    private static final String[] USER_ATTRIBUTES = {SUB, NAME, EMAIL, USER_ID};
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getenv("USER_FROM_AUTHORIZER_CONTEXT"));
+    }
+
+    public static Map<String, Object> getAuthorizer(APIGatewayProxyRequestEvent requestEvent) {
+        if (requestEvent.getRequestContext() == null) {
+            return null;
+        }
+        return requestEvent.getRequestContext().getAuthorizer();
+    }
+
+    public static String getUsername(Map<String, Object> authorizer) {
+        if (authorizer == null || authorizer.get(USERNAME) == null) {
+            return null;
+        }
+        return authorizer.get(USERNAME).toString();
+    }
+
+    /**
+     * Whether the access token was issued to the user the authorizer verified, by its sub claim. The token is
+     * only decoded: when it names someone else, or cannot be read, the caller asks Cognito as before.
+     */
+    public static boolean isAccessTokenOf(Map<String, Object> authorizer, String accessToken) {
+        if (authorizer == null || authorizer.get(SUB) == null || accessToken == null) {
+            return false;
+        }
+        try {
+            return authorizer.get(SUB).toString().equals(JWT.decode(accessToken).getSubject());
+        } catch (JWTDecodeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the user attributes carried in the authorizer context, or null if the request was
+     * not authorized by LambdaAuthorizer with claim propagation.
+     */
+    public static JsonObject getUserAttributes(Map<String, Object> authorizer) {
+        if (authorizer == null || authorizer.get(SUB) == null) {
+            return null;
+        }
+
+        JsonObject userAttributes = new JsonObject();
+        for (String attribute : USER_ATTRIBUTES) {
+            Object value = authorizer.get(attribute);
+            if (value != null) {
+                userAttributes.addProperty(attribute, value.toString());
+            }
+        }
+        return userAttributes;
+    }
+}
@@ -0,0 +1,30 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+/**
+ * Numeric settings read from environment variables. Values are trimmed, and an unset or blank variable gives
+ * the default, so a padded or emptied value in the function configuration does not fail the cold start.
+ */
+public final class EnvironmentVariables {
+
+    private EnvironmentVariables() {
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        return Math.toIntExact(parseLong(name, System.getenv(name), defaultValue));
+    }
+
+    public static long getLong(String name, long defaultValue) {
+        return parseLong(name, System.getenv(name), defaultValue);
+    }
+
+    static long parseLong(String name, String value, long defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " is not a whole number: " + value, e);
+        }
+    }
+}
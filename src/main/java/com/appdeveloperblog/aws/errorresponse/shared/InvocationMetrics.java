@@ -0,0 +1,204 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Per-invocation timings written as CloudWatch Embedded Metric Format (EMF).
+ * <p>
+ * A handler calls {@link #start} first and {@link #emit} when it is done; code in between, including
+ * CognitoUserService, records into {@link #current()}. Stage timings, counts and the cold start flag are written
+ * as one EMF line per invocation through the LambdaLogger, so CloudWatch extracts the metrics (and their
+ * percentiles) from the log without PutMetricData calls. Recording is a couple of array writes; the JSON is only
+ * built once in {@link #emit}. Set METRICS_ENABLED=false to turn it off, METRICS_NAMESPACE to change the namespace.
+ * <p>
+ * {@link #current()} is bound to the handler thread. Code completing on other threads, e.g. async Cognito calls
+ * finishing on SDK threads, takes the instance on the handler thread before dispatching and records into that;
+ * recording is synchronized for this. Stages of concurrent calls add up, so a fan-out stage can exceed Duration.
+ */
+public final class InvocationMetrics {
+
+    static final int MAX_ENTRIES = 16;
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(System.getenv("METRICS_ENABLED"));
+    private static final String NAMESPACE = System.getenv("METRICS_NAMESPACE") != null
+            ? System.getenv("METRICS_NAMESPACE")
+            : "ErrorResponseExample";
+
+    private static final AtomicBoolean COLD_START = new AtomicBoolean(true);
+    private static final ThreadLocal<InvocationMetrics> CURRENT = new ThreadLocal<>();
+
+    // Used when no invocation is being recorded on this thread, records nothing
+    private static final InvocationMetrics DISABLED = new InvocationMetrics(null, null, false);
+
+    private final String handler;
+    private final String requestId;
+    private final boolean coldStart;
+    private final long startNanos;
+
+    private final String[] stageNames = new String[MAX_ENTRIES];
+    private final long[] stageNanos = new long[MAX_ENTRIES];
+    private int stageCount;
+
+    private final String[] counterNames = new String[MAX_ENTRIES];
+    private final long[] counterValues = new long[MAX_ENTRIES];
+    private int counterCount;
+
+    private String errorCode;
+
+    private InvocationMetrics(String handler, String requestId, boolean coldStart) {
+        this.handler = handler;
+        this.requestId = requestId;
+        this.coldStart = coldStart;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts recording an invocation on the calling thread.
+     */
+    public static InvocationMetrics start(String handler, Context context) {
+        if (!ENABLED) {
+            return DISABLED;
+        }
+        InvocationMetrics metrics = new InvocationMetrics(handler,
+                context != null ? context.getAwsRequestId() : null,
+                COLD_START.getAndSet(false));
+        CURRENT.set(metrics);
+        return metrics;
+    }
+
+    /**
+     * The invocation recorded on the calling thread, or a no-op recorder when there is none (tests, SDK threads).
+     */
+    public static InvocationMetrics current() {
+        InvocationMetrics metrics = CURRENT.get();
+        return metrics != null ? metrics : DISABLED;
+    }
+
+    /**
+     * Adds the time since {@code stageStartNanos} to the named stage. Stage names should be constants.
+     */
+    public void recordStage(String stage, long stageStartNanos) {
+        if (this == DISABLED) {
+            return;
+        }
+        long elapsed = System.nanoTime() - stageStartNanos;
+        synchronized (this) {
+            addStage(stage, elapsed);
+        }
+    }
+
+    private void addStage(String stage, long elapsed) {
+        int index = indexOf(stageNames, stageCount, stage);
+        if (index >= 0) {
+            stageNanos[index] += elapsed;
+        } else if (stageCount < MAX_ENTRIES) {
+            stageNames[stageCount] = stage;
+            stageNanos[stageCount++] = elapsed;
+        }
+    }
+
+    public synchronized void count(String counter) {
+        if (this == DISABLED) {
+            return;
+        }
+        int index = indexOf(counterNames, counterCount, counter);
+        if (index >= 0) {
+            counterValues[index]++;
+        } else if (counterCount < MAX_ENTRIES) {
+            counterNames[counterCount] = counter;
+            counterValues[counterCount++] = 1;
+        }
+    }
+
+    /**
+     * Records the error code returned by a downstream service, e.g. NotAuthorizedException, or the name of the
+     * exception a call failed with on the client side, e.g. ApiCallTimeoutException.
+     */
+    public synchronized void errorCode(String errorCode) {
+        if (this != DISABLED) {
+            this.errorCode = errorCode;
+        }
+    }
+
+    /**
+     * Writes the invocation as one EMF log line and stops recording on this thread.
+     */
+    public void emit(LambdaLogger logger) {
+        if (this == DISABLED) {
+            return;
+        }
+        CURRENT.remove();
+        logger.log(toEmf(System.currentTimeMillis()));
+    }
+
+    synchronized String toEmf(long timestamp) {
+        double durationMillis = (System.nanoTime() - startNanos) / 1_000_000.0;
+
+        StringBuilder metrics = new StringBuilder(256);
+        StringBuilder values = new StringBuilder(256);
+
+        appendDefinition(metrics, "Duration", "Milliseconds");
+        appendValue(values, "Duration", durationMillis);
+        appendDefinition(metrics, "ColdStart", "Count");
+        appendValue(values, "ColdStart", coldStart ? 1 : 0);
+        appendDefinition(metrics, "Error", "Count");
+        appendValue(values, "Error", errorCode != null ? 1 : 0);
+
+        for (int i = 0; i < stageCount; i++) {
+            appendDefinition(metrics, stageNames[i], "Milliseconds");
+            appendValue(values, stageNames[i], stageNanos[i] / 1_000_000.0);
+        }
+        for (int i = 0; i < counterCount; i++) {
+            appendDefinition(metrics, counterNames[i], "Count");
+            appendValue(values, counterNames[i], counterValues[i]);
+        }
+
+        StringBuilder emf = new StringBuilder(metrics.length() + values.length() + 256);
+        emf.append("{\"_aws\":{\"Timestamp\":").append(timestamp)
+                .append(",\"CloudWatchMetrics\":[{\"Namespace\":");
+        JsonText.appendString(emf, NAMESPACE);
+        emf.append(",\"Dimensions\":[[\"Handler\"]],\"Metrics\":[").append(metrics).append("]}]},\"Handler\":");
+        JsonText.appendString(emf, handler);
+        if (requestId != null) {
+            emf.append(",\"RequestId\":");
+            JsonText.appendString(emf, requestId);
+        }
+        if (errorCode != null) {
+            emf.append(",\"ErrorCode\":");
+            JsonText.appendString(emf, errorCode);
+        }
+        return emf.append(values).append('}').toString();
+    }
+
+    private static int indexOf(String[] names, int count, String name) {
+        for (int i = 0; i < count; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void appendDefinition(StringBuilder metrics, String name, String unit) {
+        if (metrics.length() > 0) {
+            metrics.append(',');
+        }
+        metrics.append("{\"Name\":");
+        JsonText.appendString(metrics, name);
+        metrics.append(",\"Unit\":\"").append(unit).append("\"}");
+    }
+
+    private static void appendValue(StringBuilder values, String name, double value) {
+        values.append(',');
+        JsonText.appendString(values, name);
+        values.append(':').append(value);
+    }
+
+    private static void appendValue(StringBuilder values, String name, long value) {
+        values.append(',');
+        JsonText.appendString(values, name);
+        values.append(':').append(value);
+    }
+}
@@ -0,0 +1,273 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import com.appdeveloperblog.aws.errorresponse.ErrorResponse;
+import com.appdeveloperblog.aws.errorresponse.authorizer.AuthorizerOutput;
+import com.appdeveloperblog.aws.errorresponse.authorizer.PolicyDocument;
+import com.appdeveloperblog.aws.errorresponse.authorizer.Statement;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The one Gson instance of the application, with hand-written TypeAdapters for the types we serialize.
+ * <p>
+ * A {@code new Gson()} per request rebuilds Gson's adapter factories and, for our own classes, looks their fields
+ * up by reflection again. The shared instance builds them once, and the adapters below write ErrorResponse and
+ * the authorizer model straight to the JsonWriter without reflection. Service results are JsonObjects, which Gson
+ * already writes without reflection.
+ */
+public final class JsonCodec {
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(ErrorResponse.class, new ErrorResponseAdapter())
+            .registerTypeAdapter(Statement.class, new StatementAdapter())
+            .registerTypeAdapter(PolicyDocument.class, new PolicyDocumentAdapter())
+            .registerTypeAdapter(AuthorizerOutput.class, new AuthorizerOutputAdapter())
+            .create();
+
+    private JsonCodec() {
+    }
+
+    public static Gson gson() {
+        return GSON;
+    }
+
+    /**
+     * Writes a service result or any other JSON tree. Null members are left out.
+     */
+    public static String toJson(JsonElement element) {
+        return GSON.toJson(element);
+    }
+
+    /**
+     * Writes the error body; {@code message} is always present, also when it is null.
+     */
+    public static String toJson(ErrorResponse errorResponse) {
+        return GSON.toJson(errorResponse, ErrorResponse.class);
+    }
+
+    public static String toJson(AuthorizerOutput authorizerOutput) {
+        return GSON.toJson(authorizerOutput, AuthorizerOutput.class);
+    }
+
+    public static JsonElement toJsonTree(AuthorizerOutput authorizerOutput) {
+        return GSON.toJsonTree(authorizerOutput, AuthorizerOutput.class);
+    }
+
+    public static AuthorizerOutput parseAuthorizerOutput(String json) {
+        return GSON.fromJson(json, AuthorizerOutput.class);
+    }
+
+    static final class ErrorResponseAdapter extends TypeAdapter<ErrorResponse> {
+
+        @Override
+        public void write(JsonWriter out, ErrorResponse errorResponse) throws IOException {
+            if (errorResponse == null) {
+                out.nullValue();
+                return;
+            }
+            boolean serializeNulls = out.getSerializeNulls();
+            out.setSerializeNulls(true);
+            try {
+                out.beginObject();
+                out.name("message").value(errorResponse.getMessage());
+                out.endObject();
+            } finally {
+                out.setSerializeNulls(serializeNulls);
+            }
+        }
+
+        @Override
+        public ErrorResponse read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String message = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("message".equals(in.nextName())) {
+                    message = nextStringOrNull(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ErrorResponse(message);
+        }
+    }
+
+    static final class StatementAdapter extends TypeAdapter<Statement> {
+
+        @Override
+        public void write(JsonWriter out, Statement statement) throws IOException {
+            if (statement == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("Action").value(statement.Action);
+            out.name("Effect").value(statement.Effect);
+            out.name("Resource").value(statement.Resource);
+            out.endObject();
+        }
+
+        @Override
+        public Statement read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Statement.Builder builder = Statement.builder();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "Action":
+                        builder.action(nextStringOrNull(in));
+                        break;
+                    case "Effect":
+                        builder.effect(nextStringOrNull(in));
+                        break;
+                    case "Resource":
+                        builder.resource(nextStringOrNull(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return builder.build();
+        }
+    }
+
+    static final class PolicyDocumentAdapter extends TypeAdapter<PolicyDocument> {
+
+        private final StatementAdapter statementAdapter = new StatementAdapter();
+
+        @Override
+        public void write(JsonWriter out, PolicyDocument policyDocument) throws IOException {
+            if (policyDocument == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("Version").value(policyDocument.Version);
+            if (policyDocument.Statement != null) {
+                out.name("Statement").beginArray();
+                for (Statement statement : policyDocument.Statement) {
+                    statementAdapter.write(out, statement);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public PolicyDocument read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            PolicyDocument.Builder builder = PolicyDocument.builder();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "Version":
+                        builder.version(nextStringOrNull(in));
+                        break;
+                    case "Statement":
+                        List<Statement> statements = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            statements.add(statementAdapter.read(in));
+                        }
+                        in.endArray();
+                        builder.statements(statements);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return builder.build();
+        }
+    }
+
+    static final class AuthorizerOutputAdapter extends TypeAdapter<AuthorizerOutput> {
+
+        private final PolicyDocumentAdapter policyDocumentAdapter = new PolicyDocumentAdapter();
+
+        @Override
+        public void write(JsonWriter out, AuthorizerOutput authorizerOutput) throws IOException {
+            if (authorizerOutput == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("principalId").value(authorizerOutput.getPrincipalId());
+            if (authorizerOutput.getPolicyDocument() != null) {
+                out.name("policyDocument");
+                policyDocumentAdapter.write(out, authorizerOutput.getPolicyDocument());
+            }
+            if (authorizerOutput.getContext() != null) {
+                out.name("context").beginObject();
+                for (Map.Entry<String, String> entry : authorizerOutput.getContext().entrySet()) {
+                    out.name(entry.getKey()).value(entry.getValue());
+                }
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public AuthorizerOutput read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            AuthorizerOutput.Builder builder = AuthorizerOutput.builder();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "principalId":
+                        builder.principalId(nextStringOrNull(in));
+                        break;
+                    case "policyDocument":
+                        builder.policyDocument(policyDocumentAdapter.read(in));
+                        break;
+                    case "context":
+                        Map<String, String> context = new LinkedHashMap<>();
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            context.put(in.nextName(), nextStringOrNull(in));
+                        }
+                        in.endObject();
+                        builder.context(context);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return builder.build();
+        }
+    }
+
+    private static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+}
@@ -0,0 +1,27 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+/**
+ * Hand-written JSON output for the log lines built on the hot path (metrics and structured logs).
+ */
+final class JsonText {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private JsonText() {
+    }
+
+    static void appendString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+}
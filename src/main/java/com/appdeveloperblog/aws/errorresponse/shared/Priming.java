@@ -0,0 +1,192 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
+import com.appdeveloperblog.aws.errorresponse.ErrorResponse;
+import com.appdeveloperblog.aws.errorresponse.service.AccessTokenUserCache;
+import com.appdeveloperblog.aws.errorresponse.service.AwsClientFactory;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoLatencyRecorder;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoRateLimiter;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
+import com.appdeveloperblog.aws.errorresponse.service.SecretHashCalculator;
+import com.appdeveloperblog.aws.errorresponse.service.UserCache;
+import com.appdeveloperblog.aws.errorresponse.utils.JwtUtils;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.RSAKeyProvider;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SnapStart (CRaC) hook that takes the first-request costs before the snapshot is taken.
+ * <p>
+ * Before the checkpoint synthetic requests are run through the JSON parsing, SECRET_HASH, JWT verification
+ * and Cognito marshalling code paths, so classes are loaded, JCA providers are set up and Gson has built
+ * its type adapters. Cognito calls are answered in-process by {@link PrimingHttpClient}, no socket is opened.
+ * The synthetic requests run against their own verifier, rate limiter, caches and latency recorder, so no
+ * priming user, token or key is left in the process-wide state that is taken into the snapshot. After the
+ * restore the pooled connections, which did not survive it, are replaced.
+ */
+public class Priming implements Resource {
+
+    static final String REGION = "us-east-1";
+    static final String USER_POOL_ID = "priming";
+    static final String APP_CLIENT_ID = "priming-client";
+    static final String APP_CLIENT_SECRET = "priming-secret";
+    static final String KEY_ID = "priming-key";
+    static final Duration RESTORE_CONNECT_TIMEOUT = Duration.ofSeconds(1);
+
+    private static final Priming INSTANCE = new Priming();
+    private static final AtomicBoolean REGISTERED = new AtomicBoolean();
+
+    /**
+     * Registers the hooks with the global CRaC context. Safe to call from every handler constructor;
+     * only the first call registers. The static instance keeps the resource strongly reachable.
+     */
+    public static void register() {
+        if (REGISTERED.compareAndSet(false, true)) {
+            Core.getGlobalContext().register(INSTANCE);
+        }
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) throws Exception {
+        prime();
+    }
+
+    /**
+     * Drops the connections pooled before the checkpoint, dead after the restore, and opens a new one to
+     * Cognito, so the first request after a restore does not pay for TCP and TLS setup. Bounded by
+     * {@link #RESTORE_CONNECT_TIMEOUT}; a failure is logged and leaves the connection to the first request.
+     */
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        AwsClientFactory.refreshConnections();
+        if (System.getenv("AWS_REGION") == null) {
+            return;
+        }
+        try {
+            AwsClientFactory.openCognitoConnection(RESTORE_CONNECT_TIMEOUT);
+        } catch (RuntimeException e) {
+            StructuredLogger.forSource("Priming", LambdaRuntime.getLogger())
+                    .warn("Could not connect to Cognito after restore", "error", e);
+        }
+    }
+
+    /**
+     * Runs the synthetic requests. Only local resources are used.
+     */
+    public static void prime() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+        String idToken = primeJwtVerification(keyPair);
+        primeJson();
+        primeCognito(keyPair, idToken);
+    }
+
+    static void primeJson() {
+        JsonObject userDetails = JsonParser.parseString(
+                "{\"firstName\":\"Priming\",\"lastName\":\"User\",\"email\":\"priming@example.com\","
+                        + "\"password\":\"Priming-1\",\"username\":\"priming\"}").getAsJsonObject();
+        JsonCodec.toJson(userDetails);
+        JsonCodec.toJson(new ErrorResponse("priming"));
+    }
+
+    // Verifies through the same verifier setup as JwtUtils, but with an uncached verifier over the priming key
+    static String primeJwtVerification(KeyPair keyPair) {
+        RSAKeyProvider keyProvider = new RSAKeyProvider() {
+            @Override
+            public RSAPublicKey getPublicKeyById(String keyId) {
+                return KEY_ID.equals(keyId) ? (RSAPublicKey) keyPair.getPublic() : null;
+            }
+
+            @Override
+            public RSAPrivateKey getPrivateKey() {
+                return null;
+            }
+
+            @Override
+            public String getPrivateKeyId() {
+                return null;
+            }
+        };
+
+        String idToken = mintToken(keyPair, JwtUtils.TOKEN_USE_ID);
+        JwtUtils.buildVerifier(keyProvider, REGION, USER_POOL_ID, APP_CLIENT_ID, JwtUtils.TOKEN_USE_ID)
+                .verify(idToken);
+        return idToken;
+    }
+
+    static void primeCognito(KeyPair keyPair, String idToken) {
+        String user = "{\"Username\":\"priming\",\"UserAttributes\":[{\"Name\":\"email\",\"Value\":\"priming@example.com\"}]}";
+        Map<String, String> responses = Map.of(
+                "SignUp", "{\"UserSub\":\"priming\",\"UserConfirmed\":false}",
+                "InitiateAuth", "{\"AuthenticationResult\":{\"IdToken\":\"" + idToken + "\",\"AccessToken\":\""
+                        + idToken + "\",\"RefreshToken\":\"priming\",\"ExpiresIn\":3600}}",
+                "GetUser", user,
+                "AdminGetUser", user);
+
+        try (CognitoIdentityProviderClient client = CognitoIdentityProviderClient.builder()
+                .region(Region.of(REGION))
+                .endpointOverride(URI.create("http://127.0.0.1"))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("priming", "priming")))
+                .httpClient(new PrimingHttpClient(responses))
+                .build()) {
+
+            CognitoUserService cognitoUserService = new CognitoUserService(client,
+                    new CognitoRateLimiter(Map.of()),
+                    new UserCache(1, Duration.ofMinutes(1)),
+                    new AccessTokenUserCache(1, Duration.ofMinutes(1)),
+                    new CognitoLatencyRecorder());
+
+            JsonObject userDetails = new JsonObject();
+            userDetails.addProperty("firstName", "Priming");
+            userDetails.addProperty("lastName", "User");
+            userDetails.addProperty("email", "priming@example.com");
+            userDetails.addProperty("password", "Priming-1");
+            userDetails.addProperty("username", "priming");
+
+            cognitoUserService.createUser(userDetails, APP_CLIENT_ID, APP_CLIENT_SECRET);
+            cognitoUserService.loginUser("priming", "Priming-1", APP_CLIENT_ID, APP_CLIENT_SECRET);
+            cognitoUserService.getUser(mintToken(keyPair, JwtUtils.TOKEN_USE_ACCESS));
+            cognitoUserService.getUserByUsername("priming", USER_POOL_ID);
+        } finally {
+            // The SECRET_HASH Mac for the priming secret is kept process-wide
+            SecretHashCalculator.evict(APP_CLIENT_SECRET);
+        }
+    }
+
+    static String mintToken(KeyPair keyPair, String tokenUse) {
+        return JWT.create()
+                .withKeyId(KEY_ID)
+                .withIssuer("https://cognito-idp." + REGION + ".amazonaws.com/" + USER_POOL_ID)
+                .withSubject("priming")
+                .withAudience(APP_CLIENT_ID)
+                .withClaim("client_id", APP_CLIENT_ID)
+                .withClaim("token_use", tokenUse)
+                .withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+                .sign(Algorithm.RSA256((RSAPublicKey) keyPair.getPublic(), (RSAPrivateKey) keyPair.getPrivate()));
+    }
+
+    static KeyPair generateKeyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+}
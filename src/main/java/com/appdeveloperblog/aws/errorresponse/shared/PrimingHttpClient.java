@@ -0,0 +1,74 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.ExecutableHttpRequest;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.SdkHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * In-process SDK HTTP client answering every Cognito operation with a canned JSON protocol response.
+ * <p>
+ * Used by {@link Priming} so the Cognito client marshals requests and unmarshals responses without a socket
+ * being opened, neither to Cognito nor to a local server.
+ */
+class PrimingHttpClient implements SdkHttpClient {
+
+    private final Map<String, String> responses;
+
+    /**
+     * @param responses response bodies by operation name, e.g. GetUser; other operations get {@code {}}
+     */
+    PrimingHttpClient(Map<String, String> responses) {
+        this.responses = responses;
+    }
+
+    @Override
+    public ExecutableHttpRequest prepareRequest(HttpExecuteRequest request) {
+        return new ExecutableHttpRequest() {
+            @Override
+            public HttpExecuteResponse call() throws IOException {
+                if (request.contentStreamProvider().isPresent()) {
+                    try (InputStream requestBody = request.contentStreamProvider().get().newStream()) {
+                        requestBody.readAllBytes();
+                    }
+                }
+
+                String target = request.httpRequest().firstMatchingHeader("X-Amz-Target").orElse("");
+                String operation = target.substring(target.lastIndexOf('.') + 1);
+                byte[] body = responses.getOrDefault(operation, "{}").getBytes(StandardCharsets.UTF_8);
+
+                return HttpExecuteResponse.builder()
+                        .response(SdkHttpResponse.builder()
+                                .statusCode(200)
+                                .putHeader("Content-Type", "application/x-amz-json-1.1")
+                                .putHeader("Content-Length", String.valueOf(body.length))
+                                .build())
+                        .responseBody(AbortableInputStream.create(new ByteArrayInputStream(body)))
+                        .build();
+            }
+
+            @Override
+            public void abort() {
+                // Answered synchronously, nothing to abort
+            }
+        };
+    }
+
+    @Override
+    public String clientName() {
+        return "Priming";
+    }
+
+    @Override
+    public void close() {
+        // No connections to release
+    }
+}
@@ -0,0 +1,124 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import com.appdeveloperblog.aws.errorresponse.service.AwsClientFactory;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.kms.model.DecryptRequest;
+
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Decrypts KMS encrypted environment variables once per container.
+ * <p>
+ * All variables requested together are decrypted concurrently, plaintexts are memoized for the lifetime
+ * of the container and the KMS client is built only once. Tests can pass their own {@link Decryptor} and
+ * environment instead of calling KMS.
+ */
+public class SecretsLoader {
+
+    @FunctionalInterface
+    public interface Decryptor {
+        String decrypt(String base64Ciphertext);
+    }
+
+    private static volatile SecretsLoader shared;
+
+    private static final ExecutorService DECRYPT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "secrets-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Decryptor decryptor;
+    private final Function<String, String> environment;
+    private final ConcurrentMap<String, CompletableFuture<String>> plaintexts = new ConcurrentHashMap<>();
+
+    public SecretsLoader(Decryptor decryptor, Function<String, String> environment) {
+        this.decryptor = decryptor;
+        this.environment = environment;
+    }
+
+    public static SecretsLoader shared() {
+        if (shared == null) {
+            synchronized (SecretsLoader.class) {
+                if (shared == null) {
+                    shared = new SecretsLoader(new KmsDecryptor(), System::getenv);
+                }
+            }
+        }
+        return shared;
+    }
+
+    public String get(String envVariableName) {
+        return join(decryptAsync(envVariableName));
+    }
+
+    /**
+     * Decrypts all given variables concurrently and returns their plaintexts keyed by variable name.
+     */
+    public Map<String, String> getAll(String... envVariableNames) {
+        Map<String, CompletableFuture<String>> pending = new LinkedHashMap<>();
+        for (String envVariableName : envVariableNames) {
+            pending.put(envVariableName, decryptAsync(envVariableName));
+        }
+
+        Map<String, String> decrypted = new LinkedHashMap<>();
+        pending.forEach((envVariableName, plaintext) -> decrypted.put(envVariableName, join(plaintext)));
+        return decrypted;
+    }
+
+    private CompletableFuture<String> decryptAsync(String envVariableName) {
+        CompletableFuture<String> plaintext = plaintexts.computeIfAbsent(envVariableName,
+                name -> CompletableFuture.supplyAsync(() -> decrypt(name), DECRYPT_EXECUTOR));
+
+        // Do not memoize failures, the next call tries again
+        plaintext.whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                plaintexts.remove(envVariableName, plaintext);
+            }
+        });
+        return plaintext;
+    }
+
+    private String decrypt(String envVariableName) {
+        String ciphertext = environment.apply(envVariableName);
+        if (ciphertext == null) {
+            throw new IllegalStateException("Environment variable " + envVariableName + " is not set");
+        }
+        return decryptor.decrypt(ciphertext);
+    }
+
+    private static String join(CompletableFuture<String> plaintext) {
+        try {
+            return plaintext.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Uses the SDK v2 KMS client that shares its HTTP client and credentials with the Cognito client
+    static final class KmsDecryptor implements Decryptor {
+
+        @Override
+        public String decrypt(String base64Ciphertext) {
+            byte[] encryptedKey = Base64.getDecoder().decode(base64Ciphertext);
+
+            DecryptRequest request = DecryptRequest.builder()
+                    .ciphertextBlob(SdkBytes.fromByteArray(encryptedKey))
+                    .build();
+
+            return AwsClientFactory.getKmsClient().decrypt(request).plaintext().asUtf8String();
+        }
+    }
+}
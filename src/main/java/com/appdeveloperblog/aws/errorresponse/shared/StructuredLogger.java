@@ -0,0 +1,220 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Leveled logger writing one compact JSON line per message through the LambdaLogger.
+ * <p>
+ * Messages take key/value pairs, e.g. {@code log.info("User created", "username", username)}. A message below the
+ * level is dropped before anything is formatted; wrap expensive values in {@link #lazy} so they are not even
+ * computed. Values of sensitive keys (passwords, tokens, secrets, confirmation codes), also inside logged
+ * JsonObjects, are written as {@value #REDACTED}.
+ * <p>
+ * The level comes from LOG_LEVEL (default INFO). LOG_SAMPLE_RATE (0.0 to 1.0, default 0) is the share of requests
+ * logged at DEBUG regardless, to get full detail for a few requests without paying for it on all of them.
+ */
+public final class StructuredLogger {
+
+    public enum Level {
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR
+    }
+
+    public static final String REDACTED = "***";
+
+    private static final Level LEVEL = parseLevel(System.getenv("LOG_LEVEL"));
+    private static final double SAMPLE_RATE = parseSampleRate(System.getenv("LOG_SAMPLE_RATE"));
+
+    // Keys containing one of these, case-insensitive, are redacted
+    private static final String[] SENSITIVE_KEY_PARTS = {"password", "token", "secret", "authorization", "jwt"};
+    private static final String[] SENSITIVE_KEYS = {"code", "confirmationCode"};
+
+    private final LambdaLogger logger;
+    private final String source;
+    private final String requestId;
+    private final Level level;
+    private final boolean sampled;
+
+    public StructuredLogger(LambdaLogger logger, String source, String requestId, Level level, boolean sampled) {
+        this.logger = logger;
+        this.source = source;
+        this.requestId = requestId;
+        this.level = sampled ? Level.DEBUG : level;
+        this.sampled = sampled;
+    }
+
+    /**
+     * Logger for one request, with the configured level and sampling decision.
+     */
+    public static StructuredLogger forRequest(String source, Context context) {
+        boolean sampled = SAMPLE_RATE > 0 && ThreadLocalRandom.current().nextDouble() < SAMPLE_RATE;
+        return new StructuredLogger(context.getLogger(), source, context.getAwsRequestId(), LEVEL, sampled);
+    }
+
+    /**
+     * Logger for code running outside a request, e.g. background tasks, with the configured level.
+     */
+    public static StructuredLogger forSource(String source, LambdaLogger logger) {
+        return new StructuredLogger(logger, source, null, LEVEL, false);
+    }
+
+    /**
+     * Marks a value to be computed only when the message is written.
+     */
+    public static Supplier<?> lazy(Supplier<?> value) {
+        return value;
+    }
+
+    public boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) >= 0;
+    }
+
+    public void debug(String message, Object... keyValues) {
+        log(Level.DEBUG, message, keyValues);
+    }
+
+    public void info(String message, Object... keyValues) {
+        log(Level.INFO, message, keyValues);
+    }
+
+    public void warn(String message, Object... keyValues) {
+        log(Level.WARN, message, keyValues);
+    }
+
+    public void error(String message, Object... keyValues) {
+        log(Level.ERROR, message, keyValues);
+    }
+
+    public void log(Level messageLevel, String message, Object... keyValues) {
+        if (!isEnabled(messageLevel)) {
+            return;
+        }
+        logger.log(format(messageLevel, message, keyValues));
+    }
+
+    String format(Level messageLevel, String message, Object... keyValues) {
+        StringBuilder line = new StringBuilder(128);
+        line.append("{\"timestamp\":").append(System.currentTimeMillis())
+                .append(",\"level\":\"").append(messageLevel).append('"');
+        appendField(line, "source", source);
+        if (requestId != null) {
+            appendField(line, "requestId", requestId);
+        }
+        appendField(line, "message", message);
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            appendField(line, String.valueOf(keyValues[i]), keyValues[i + 1]);
+        }
+        if (sampled) {
+            line.append(",\"sampled\":true");
+        }
+        return line.append('}').toString();
+    }
+
+    /**
+     * Copy of the element with the values of sensitive keys replaced, at any depth.
+     */
+    public static JsonElement redact(JsonElement element) {
+        if (element instanceof JsonObject) {
+            JsonObject redacted = new JsonObject();
+            for (Map.Entry<String, JsonElement> entry : ((JsonObject) element).entrySet()) {
+                redacted.add(entry.getKey(), isSensitive(entry.getKey()) && !entry.getValue().isJsonNull()
+                        ? new JsonPrimitive(REDACTED)
+                        : redact(entry.getValue()));
+            }
+            return redacted;
+        }
+        if (element instanceof JsonArray) {
+            JsonArray redacted = new JsonArray();
+            ((JsonArray) element).forEach(item -> redacted.add(redact(item)));
+            return redacted;
+        }
+        return element;
+    }
+
+    static boolean isSensitive(String key) {
+        for (String sensitiveKey : SENSITIVE_KEYS) {
+            if (sensitiveKey.equalsIgnoreCase(key)) {
+                return true;
+            }
+        }
+        String lowerCaseKey = key.toLowerCase(Locale.ROOT);
+        for (String part : SENSITIVE_KEY_PARTS) {
+            if (lowerCaseKey.contains(part)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void appendField(StringBuilder line, String key, Object value) {
+        line.append(',');
+        JsonText.appendString(line, key);
+        line.append(':');
+        if (value != null && isSensitive(key)) {
+            JsonText.appendString(line, REDACTED);
+        } else {
+            appendValue(line, value);
+        }
+    }
+
+    private static void appendValue(StringBuilder line, Object value) {
+        if (value instanceof Supplier) {
+            value = ((Supplier<?>) value).get();
+        }
+
+        if (value == null) {
+            line.append("null");
+        } else if (value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+            line.append(value);
+        } else if (value instanceof Number && Double.isFinite(((Number) value).doubleValue())) {
+            line.append(value);
+        } else if (value instanceof JsonElement) {
+            line.append(redact((JsonElement) value));
+        } else if (value instanceof Throwable) {
+            Throwable throwable = (Throwable) value;
+            JsonText.appendString(line, throwable.getClass().getSimpleName() + ": " + throwable.getMessage());
+        } else {
+            JsonText.appendString(line, String.valueOf(value));
+        }
+    }
+
+    private static Level parseLevel(String level) {
+        if (level == null || level.isBlank()) {
+            return Level.INFO;
+        }
+        try {
+            return Level.valueOf(level.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    // Anything unreadable falls back to 0, a misconfigured rate must not fail class initialization
+    static double parseSampleRate(String sampleRate) {
+        if (sampleRate == null || sampleRate.isBlank()) {
+            return 0;
+        }
+        double rate;
+        try {
+            rate = Double.parseDouble(sampleRate.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        if (Double.isNaN(rate)) {
+            return 0;
+        }
+        return Math.min(Math.max(rate, 0), 1);
+    }
+}
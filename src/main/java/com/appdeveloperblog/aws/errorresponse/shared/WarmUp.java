@@ -0,0 +1,101 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.service.AwsClientFactory;
+import com.appdeveloperblog.aws.errorresponse.utils.AwsCognitoRSAKeyProvider;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+
+/**
+ * Warm-up protocol shared by all handlers.
+ * <p>
+ * A scheduled ping is an event carrying the {@value #HEADER} header, e.g. an EventBridge rule with the
+ * constant input {"headers":{"X-Warm-Up":"true"}}. Handlers check for it before anything else, prime
+ * their lazy state (the shared Cognito client, the KMS secrets they use and the JWKS keys of the user
+ * pool) and answer right away without calling Cognito. The time spent priming is logged and returned.
+ * <p>
+ * Callers control request headers, so the header alone is not enough: API Gateway always sets the request
+ * context and the HTTP method of a proxy event, a ping has neither. A request sent through the API with the
+ * header is handled like any other request.
+ */
+public final class WarmUp {
+
+    public static final String HEADER = "X-Warm-Up";
+
+    private WarmUp() {
+    }
+
+    public static boolean isWarmUp(APIGatewayProxyRequestEvent event) {
+        if (event == null || event.getHeaders() == null) {
+            return false;
+        }
+        if (event.getRequestContext() != null || event.getHttpMethod() != null) {
+            return false;
+        }
+        for (String header : event.getHeaders().keySet()) {
+            if (HEADER.equalsIgnoreCase(header)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Primes the lazy state and returns the warm-up response.
+     *
+     * @param secretNames KMS encrypted environment variables the calling handler uses
+     */
+    public static APIGatewayProxyResponseEvent respond(LambdaLogger logger, String... secretNames) {
+        long primingMillis = prime(logger, secretNames);
+
+        JsonObject warmUpResult = new JsonObject();
+        warmUpResult.addProperty("warmUp", true);
+        warmUpResult.addProperty("primingMillis", primingMillis);
+
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(200)
+                .withHeaders(Map.of("Content-Type", "application/json"))
+                .withBody(JsonCodec.toJson(warmUpResult));
+    }
+
+    /**
+     * Primes the lazy state. Failures are logged and do not fail the ping.
+     *
+     * @return how long priming took in milliseconds
+     */
+    public static long prime(LambdaLogger logger, String... secretNames) {
+        StructuredLogger log = StructuredLogger.forSource("WarmUp", logger);
+        long start = System.nanoTime();
+
+        try {
+            AwsClientFactory.getCognitoClient();
+        } catch (RuntimeException e) {
+            log.warn("Could not build the Cognito client", "error", e);
+        }
+
+        if (secretNames.length > 0) {
+            try {
+                SecretsLoader.shared().getAll(secretNames);
+            } catch (RuntimeException e) {
+                log.warn("Could not decrypt secrets", "error", e);
+            }
+        }
+
+        String region = System.getenv("AWS_REGION");
+        String userPoolId = System.getenv("PHOTO_APP_USERS_POOL_ID");
+        if (region != null && userPoolId != null) {
+            try {
+                new AwsCognitoRSAKeyProvider(region, userPoolId).preload();
+            } catch (RuntimeException e) {
+                log.warn("Could not load jwks.json", "error", e);
+            }
+        }
+
+        long primingMillis = (System.nanoTime() - start) / 1_000_000;
+        log.info("Warm-up ping", "primingMillis", primingMillis);
+        return primingMillis;
+    }
+}
@@ -1,8 +1,5 @@
 package com.appdeveloperblog.aws.errorresponse.utils;
 
-import com.auth0.jwk.JwkException;
-import com.auth0.jwk.JwkProvider;
-import com.auth0.jwk.JwkProviderBuilder;
 import com.auth0.jwt.interfaces.RSAKeyProvider;
 
 import java.net.MalformedURLException;
@@ -12,27 +9,52 @@ import java.security.interfaces.RSAPublicKey;
 
 public class AwsCognitoRSAKeyProvider implements RSAKeyProvider {
 
-    private final URL aws_key_set_url;
-    private final JwkProvider provider;
+    // Base URL the user pool's jwks.json is fetched from instead of Cognito, e.g. a local key server for load tests
+    public static final String JWKS_BASE_URL_ENV = "COGNITO_JWKS_BASE_URL";
+
+    private final JwksKeyStore keyStore;
 
     public AwsCognitoRSAKeyProvider(String aws_cognito_region, String aws_user_pools_id) {
-        String url = String.format("https://cognito-idp.%s.amazonaws.com/%s/.well-known/jwks.json", aws_cognito_region, aws_user_pools_id);
+        this(getKeySetUrl(aws_cognito_region, aws_user_pools_id));
+    }
+
+    public AwsCognitoRSAKeyProvider(String jwks_base_url, String aws_cognito_region, String aws_user_pools_id) {
+        this(getKeySetUrl(jwks_base_url, aws_cognito_region, aws_user_pools_id));
+    }
+
+    public AwsCognitoRSAKeyProvider(URL aws_key_set_url) {
+        keyStore = JwksKeyStore.forUrl(aws_key_set_url);
+    }
+
+    /**
+     * The jwks.json location of the user pool, on the base URL from COGNITO_JWKS_BASE_URL when set.
+     */
+    public static URL getKeySetUrl(String aws_cognito_region, String aws_user_pools_id) {
+        return getKeySetUrl(System.getenv(JWKS_BASE_URL_ENV), aws_cognito_region, aws_user_pools_id);
+    }
+
+    /**
+     * The jwks.json location of the user pool; a null or blank base URL means Cognito itself.
+     */
+    public static URL getKeySetUrl(String jwks_base_url, String aws_cognito_region, String aws_user_pools_id) {
+        String baseUrl = jwks_base_url == null || jwks_base_url.isBlank()
+                ? String.format("https://cognito-idp.%s.amazonaws.com", aws_cognito_region)
+                : jwks_base_url.trim().replaceAll("/+$", "");
+        String url = String.format("%s/%s/.well-known/jwks.json", baseUrl, aws_user_pools_id);
         try {
-            aws_key_set_url = new URL(url);
+            return new URL(url);
         } catch (MalformedURLException e) {
             throw new RuntimeException(String.format("Invalid URL %s", url));
         }
-        provider = new JwkProviderBuilder(aws_key_set_url).build();
     }
 
+    public void preload() {
+        keyStore.preload();
+    }
 
     @Override
     public RSAPublicKey getPublicKeyById(String kid) {
-        try {
-            return (RSAPublicKey) provider.get(kid).getPublicKey();
-        } catch (JwkException e) {
-            throw new RuntimeException(String.format("Failed to get public key using kid: %s from jwks.json located at: %s", kid, aws_key_set_url));
-        }
+        return keyStore.getPublicKey(kid);
     }
 
     @Override
@@ -44,4 +66,4 @@ public class AwsCognitoRSAKeyProvider implements RSAKeyProvider {
     public String getPrivateKeyId() {
         return null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,184 @@
+package com.appdeveloperblog.aws.errorresponse.utils;
+
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
+import com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger;
+import com.auth0.jwk.InvalidPublicKeyException;
+import com.auth0.jwk.Jwk;
+import com.auth0.jwk.SigningKeyNotFoundException;
+import com.auth0.jwk.UrlJwkProvider;
+
+import java.net.URL;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide store of the RSA public keys published at a jwks.json location.
+ * <p>
+ * One store exists per key set URL (and therefore per region and user pool), so warm containers
+ * keep the parsed keys across invocations. Keys are refreshed in the background once they are
+ * older than {@link #REFRESH_AFTER} and reloaded synchronously once they are older than
+ * {@link #EXPIRE_AFTER}. A token carrying an unknown kid triggers at most one refetch per
+ * {@link #MIN_REFETCH_INTERVAL}, so forged kids cannot be used to hammer the JWKS endpoint. The same interval
+ * applies after a failed load: until it has passed, verifications fail without another fetch.
+ */
+public class JwksKeyStore {
+
+    public static final Duration REFRESH_AFTER = Duration.ofMinutes(30);
+    public static final Duration EXPIRE_AFTER = Duration.ofHours(6);
+    public static final Duration MIN_REFETCH_INTERVAL = Duration.ofSeconds(30);
+
+    // Fetches run under the store's lock, a hung endpoint must not hold up every verifying thread for long
+    static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(2);
+    static final Duration READ_TIMEOUT = Duration.ofSeconds(2);
+
+    private static final StructuredLogger LOG = StructuredLogger.forSource("JwksKeyStore", LambdaRuntime.getLogger());
+
+    private static final ConcurrentMap<String, JwksKeyStore> STORES = new ConcurrentHashMap<>();
+
+    private static final ExecutorService REFRESH_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jwks-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final URL keySetUrl;
+    private final UrlJwkProvider jwkProvider;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile Map<String, RSAPublicKey> keys = Map.of();
+    private volatile long loadedAtMillis;
+    private volatile long lastFetchMillis;
+
+    private JwksKeyStore(URL keySetUrl) {
+        this.keySetUrl = keySetUrl;
+        this.jwkProvider = new UrlJwkProvider(keySetUrl, (int) CONNECT_TIMEOUT.toMillis(),
+                (int) READ_TIMEOUT.toMillis());
+    }
+
+    public static JwksKeyStore forUrl(URL keySetUrl) {
+        return STORES.computeIfAbsent(keySetUrl.toString(), key -> new JwksKeyStore(keySetUrl));
+    }
+
+    /**
+     * Seeds the store for the given URL with already known keys, e.g. keys generated by a test.
+     * Seeded keys are treated as freshly loaded.
+     */
+    public static void seed(URL keySetUrl, Map<String, RSAPublicKey> seededKeys) {
+        seed(keySetUrl, seededKeys, Instant.now());
+    }
+
+    /**
+     * Seeds the store as if the keys had been fetched at {@code loadedAt}, e.g. to let a test reach the
+     * refetch on an unknown kid without waiting for {@link #MIN_REFETCH_INTERVAL}.
+     */
+    public static void seed(URL keySetUrl, Map<String, RSAPublicKey> seededKeys, Instant loadedAt) {
+        JwksKeyStore store = forUrl(keySetUrl);
+        synchronized (store) {
+            store.keys = Map.copyOf(seededKeys);
+            store.loadedAtMillis = loadedAt.toEpochMilli();
+            store.lastFetchMillis = store.loadedAtMillis;
+        }
+    }
+
+    public static void clear() {
+        STORES.clear();
+    }
+
+    public RSAPublicKey getPublicKey(String kid) {
+        long now = System.currentTimeMillis();
+        long age = now - loadedAtMillis;
+        long fetchedAt = lastFetchMillis;
+
+        if (keys.isEmpty() || age >= EXPIRE_AFTER.toMillis()) {
+            if (now - fetchedAt < MIN_REFETCH_INTERVAL.toMillis()) {
+                // The last fetch failed moments ago, do not send every verification to the endpoint
+                throw new RuntimeException(String.format("No current keys for jwks.json located at: %s, "
+                        + "retrying in at most %s", keySetUrl, MIN_REFETCH_INTERVAL));
+            }
+            reload(fetchedAt);
+        } else if (age >= REFRESH_AFTER.toMillis()) {
+            refreshInBackground();
+        }
+
+        RSAPublicKey key = keys.get(kid);
+        fetchedAt = lastFetchMillis;
+        if (key == null && now - fetchedAt >= MIN_REFETCH_INTERVAL.toMillis()) {
+            // Keys may have been rotated since the last fetch
+            reload(fetchedAt);
+            key = keys.get(kid);
+        }
+
+        if (key == null) {
+            throw new RuntimeException(String.format("Unknown kid: %s in jwks.json located at: %s", kid, keySetUrl));
+        }
+        return key;
+    }
+
+    /**
+     * Loads the keys now unless fresh keys are already held, so the first token does not wait for jwks.json.
+     */
+    public void preload() {
+        if (keys.isEmpty() || System.currentTimeMillis() - loadedAtMillis >= EXPIRE_AFTER.toMillis()) {
+            reload(lastFetchMillis);
+        }
+    }
+
+    private void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        long observedFetchMillis = lastFetchMillis;
+        REFRESH_EXECUTOR.execute(() -> {
+            try {
+                reload(observedFetchMillis);
+            } catch (RuntimeException e) {
+                // Keep serving the current keys until they expire
+                LOG.warn("Background jwks.json refresh failed", "keySetUrl", keySetUrl, "error", e);
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    private synchronized void reload(long observedFetchMillis) {
+        if (lastFetchMillis != observedFetchMillis) {
+            // Another thread fetched the keys while we were waiting, successfully or not
+            return;
+        }
+        lastFetchMillis = System.currentTimeMillis();
+        keys = fetchKeys();
+        loadedAtMillis = System.currentTimeMillis();
+    }
+
+    private Map<String, RSAPublicKey> fetchKeys() {
+        List<Jwk> jwks;
+        try {
+            jwks = jwkProvider.getAll();
+        } catch (SigningKeyNotFoundException e) {
+            throw new RuntimeException(String.format("Failed to load jwks.json located at: %s", keySetUrl), e);
+        }
+
+        Map<String, RSAPublicKey> fetchedKeys = new HashMap<>();
+        for (Jwk jwk : jwks) {
+            try {
+                PublicKey publicKey = jwk.getPublicKey();
+                if (jwk.getId() != null && publicKey instanceof RSAPublicKey) {
+                    fetchedKeys.put(jwk.getId(), (RSAPublicKey) publicKey);
+                }
+            } catch (InvalidPublicKeyException e) {
+                // Skip keys we cannot use for RS256 verification
+            }
+        }
+        return Map.copyOf(fetchedKeys);
+    }
+}
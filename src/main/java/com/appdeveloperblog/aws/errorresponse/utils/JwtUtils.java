@@ -5,25 +5,85 @@ import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.auth0.jwt.interfaces.RSAKeyProvider;
+import com.auth0.jwt.interfaces.Verification;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class JwtUtils {
 
+    public static final String TOKEN_USE_ID = "id";
+    public static final String TOKEN_USE_ACCESS = "access";
+
+    // Verifiers are immutable and thread-safe, so one per (region, userPoolId, audience, token_use) is enough
+    private static final ConcurrentMap<String, JWTVerifier> VERIFIERS = new ConcurrentHashMap<>();
+
+    private final String jwksBaseUrl;
+
+    public JwtUtils() {
+        this(System.getenv(AwsCognitoRSAKeyProvider.JWKS_BASE_URL_ENV));
+    }
+
+    /**
+     * @param jwksBaseUrl base URL to fetch jwks.json from instead of Cognito; null for Cognito itself
+     */
+    public JwtUtils(String jwksBaseUrl) {
+        this.jwksBaseUrl = jwksBaseUrl;
+    }
+
     public DecodedJWT validateJwtForUser(String jwt,
                                          String region,
                                          String userPoolId,
                                          String principalId,
                                          String audience) {
 
-        RSAKeyProvider keyProvider = new AwsCognitoRSAKeyProvider(region, userPoolId);
+        return validateIdToken(jwt, region, userPoolId, audience);
+    }
+
+    public DecodedJWT validateIdToken(String jwt, String region, String userPoolId, String audience) {
+        return getVerifier(jwksBaseUrl, region, userPoolId, audience, TOKEN_USE_ID).verify(jwt);
+    }
+
+    public DecodedJWT validateAccessToken(String jwt, String region, String userPoolId, String clientId) {
+        return getVerifier(jwksBaseUrl, region, userPoolId, clientId, TOKEN_USE_ACCESS).verify(jwt);
+    }
+
+    public static JWTVerifier getVerifier(String region, String userPoolId, String audience, String tokenUse) {
+        return getVerifier(System.getenv(AwsCognitoRSAKeyProvider.JWKS_BASE_URL_ENV), region, userPoolId, audience,
+                tokenUse);
+    }
 
+    public static JWTVerifier getVerifier(String jwksBaseUrl, String region, String userPoolId, String audience,
+                                          String tokenUse) {
+        String key = jwksBaseUrl + "|" + region + "|" + userPoolId + "|" + audience + "|" + tokenUse;
+        return VERIFIERS.computeIfAbsent(key, k -> buildVerifier(jwksBaseUrl, region, userPoolId, audience, tokenUse));
+    }
+
+    private static JWTVerifier buildVerifier(String jwksBaseUrl, String region, String userPoolId, String audience,
+                                             String tokenUse) {
+        return buildVerifier(new AwsCognitoRSAKeyProvider(jwksBaseUrl, region, userPoolId), region, userPoolId,
+                audience, tokenUse);
+    }
+
+    /**
+     * Builds a verifier checking signatures against the given keys. It is not cached, unlike the ones returned
+     * by {@link #getVerifier}.
+     */
+    public static JWTVerifier buildVerifier(RSAKeyProvider keyProvider, String region, String userPoolId,
+                                            String audience, String tokenUse) {
         Algorithm algorithm = Algorithm.RSA256(keyProvider);
-        JWTVerifier jwtVerifier = JWT.require(algorithm)
+        Verification verification = JWT.require(algorithm)
 //                .withSubject(principalId)
-                .withAudience(audience)
                 .withIssuer("https://cognito-idp." + region + ".amazonaws.com/" + userPoolId)
-                .withClaim("token_use","id")
-                .build();
+                .withClaim("token_use", tokenUse);
+
+        // Cognito access tokens carry the app client in client_id instead of aud
+        if (TOKEN_USE_ACCESS.equals(tokenUse)) {
+            verification.withClaim("client_id", audience);
+        } else {
+            verification.withAudience(audience);
+        }
 
-        return jwtVerifier.verify(jwt);
+        return verification.build();
     }
 }
@@ -0,0 +1,95 @@
+package com.appdeveloperblog.aws.errorresponse;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
+import com.appdeveloperblog.aws.errorresponse.service.GroupMembershipBatch;
+import com.appdeveloperblog.aws.errorresponse.shared.Constants;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BatchAddUserToGroupHandlerTest {
+
+    private static final String USER_POOL_ID = "us-east-1_pool";
+
+    @Mock
+    CognitoUserService cognitoUserService;
+
+    @Mock
+    Context context;
+
+    @Mock
+    LambdaLogger logger;
+
+    BatchAddUserToGroupHandler batchAddUserToGroupHandler;
+
+    @BeforeEach
+    public void runBeforeEachTestMethod() {
+        when(context.getLogger()).thenReturn(logger);
+        batchAddUserToGroupHandler = new BatchAddUserToGroupHandler(
+                new GroupMembershipBatch(cognitoUserService, 2), USER_POOL_ID);
+    }
+
+    @Test
+    public void testHandleRequest_whenOneMembershipFails_returnsCountsAndResultPerMembership() {
+        JsonObject addUserToGroupResult = new JsonObject();
+        addUserToGroupResult.addProperty(Constants.IS_SUCCESSFUL, true);
+        addUserToGroupResult.addProperty(Constants.STATUS_CODE, 200);
+        when(cognitoUserService.addUserToGroupAsync("admins", "peacemaker", USER_POOL_ID))
+                .thenReturn(CompletableFuture.completedFuture(addUserToGroupResult));
+        when(cognitoUserService.addUserToGroupAsync("admins", "smith", USER_POOL_ID))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Group not found")));
+
+        APIGatewayProxyResponseEvent responseEvent = batchAddUserToGroupHandler.handleRequest(request(
+                "{\"memberships\":[{\"username\":\"peacemaker\",\"groupName\":\"admins\"},"
+                        + "{\"username\":\"smith\",\"groupName\":\"admins\"}]}"), context);
+        JsonObject responseBodyJson = JsonParser.parseString(responseEvent.getBody()).getAsJsonObject();
+
+        assertEquals(200, responseEvent.getStatusCode());
+        assertEquals(2, responseBodyJson.get("total").getAsInt());
+        assertEquals(1, responseBodyJson.get("succeeded").getAsInt());
+        assertEquals(1, responseBodyJson.get("failed").getAsInt());
+        assertEquals("Group not found", responseBodyJson.getAsJsonArray("results").get(1).getAsJsonObject()
+                .get("message").getAsString());
+    }
+
+    @Test
+    public void testHandleRequest_whenMembershipsArrayMissing_returnsErrorMessage() {
+        APIGatewayProxyResponseEvent responseEvent = batchAddUserToGroupHandler.handleRequest(
+                request("{\"username\":\"peacemaker\",\"groupName\":\"admins\"}"), context);
+
+        assertEquals(500, responseEvent.getStatusCode());
+        assertEquals("Missing memberships array", JsonParser.parseString(responseEvent.getBody()).getAsJsonObject()
+                .get("message").getAsString());
+        verifyNoInteractions(cognitoUserService);
+    }
+
+    @Test
+    public void testHandleRequest_whenBodyIsNotJson_returnsErrorStatus() {
+        APIGatewayProxyResponseEvent responseEvent = batchAddUserToGroupHandler.handleRequest(
+                request("memberships=peacemaker"), context);
+
+        assertEquals(500, responseEvent.getStatusCode());
+        assertTrue(JsonParser.parseString(responseEvent.getBody()).getAsJsonObject().has("message"));
+        verifyNoInteractions(cognitoUserService);
+    }
+
+    private static APIGatewayProxyRequestEvent request(String body) {
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod("POST")
+                .withBody(body);
+    }
+}
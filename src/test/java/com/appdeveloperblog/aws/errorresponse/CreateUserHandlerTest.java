@@ -5,8 +5,10 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoThrottledException;
 import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
 import com.appdeveloperblog.aws.errorresponse.shared.Constants;
+import com.appdeveloperblog.aws.errorresponse.shared.WarmUp;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -20,6 +22,7 @@ import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
 import software.amazon.awssdk.awscore.exception.AwsServiceException;
 import software.amazon.awssdk.http.SdkHttpResponse;
 
+import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -100,7 +103,9 @@ public class CreateUserHandlerTest {
 
 
         // Assert or Then
+        // Only the EMF metrics line, the request body is logged at DEBUG
         verify(logger, times(1)).log(anyString());
+        verify(logger, times(1)).log(startsWith("{\"_aws\""));
         assertTrue(responseBodyJson.get(Constants.IS_SUCCESSFUL).getAsBoolean());
         assertEquals(200, responseBodyJson.get(Constants.STATUS_CODE).getAsInt());
         assertNotNull(responseBodyJson.get(Constants.COGNITO_USER_ID).getAsString());
@@ -172,4 +177,56 @@ public class CreateUserHandlerTest {
 
     }
 
+    @Test
+    public void testHandleRequest_whenCognitoThrottled_returnsTooManyRequestsWithRetryAfter() {
+        // Arrange
+        when(apiGatewayProxyRequestEvent.getBody()).thenReturn("{\"username\":\"peacemaker\"}");
+        when(cognitoUserService.createUser(any(), any(), any()))
+                .thenThrow(new CognitoThrottledException("Cognito request rate limit reached, try again later", 3));
+
+        // Act
+        APIGatewayProxyResponseEvent responseEvent = createUserHandler.handleRequest(apiGatewayProxyRequestEvent, context);
+        JsonObject responseBodyJson = JsonParser.parseString(responseEvent.getBody()).getAsJsonObject();
+
+        // Assert
+        assertEquals(429, responseEvent.getStatusCode());
+        assertEquals("3", responseEvent.getHeaders().get("Retry-After"));
+        assertEquals("Cognito request rate limit reached, try again later",
+                responseBodyJson.get("message").getAsString());
+    }
+
+    @Test
+    public void testHandleRequest_whenWarmUpPingReceived_returnsWithoutCallingCognito() {
+        // Arrange
+        when(apiGatewayProxyRequestEvent.getHeaders()).thenReturn(Map.of(WarmUp.HEADER, "true"));
+
+        // Act
+        APIGatewayProxyResponseEvent responseEvent = createUserHandler.handleRequest(apiGatewayProxyRequestEvent, context);
+        JsonObject responseBodyJson = JsonParser.parseString(responseEvent.getBody()).getAsJsonObject();
+
+        // Assert
+        assertEquals(200, responseEvent.getStatusCode());
+        assertTrue(responseBodyJson.get("warmUp").getAsBoolean());
+        assertTrue(responseBodyJson.get("primingMillis").getAsLong() >= 0);
+        verify(apiGatewayProxyRequestEvent, never()).getBody();
+        verifyNoInteractions(cognitoUserService);
+    }
+
+    @Test
+    public void testHandleRequest_whenApiRequestCarriesWarmUpHeader_handlesItAsRegularRequest() {
+        // Arrange
+        when(apiGatewayProxyRequestEvent.getHeaders()).thenReturn(Map.of(WarmUp.HEADER, "true"));
+        when(apiGatewayProxyRequestEvent.getRequestContext())
+                .thenReturn(new APIGatewayProxyRequestEvent.ProxyRequestContext().withHttpMethod("POST"));
+        when(apiGatewayProxyRequestEvent.getBody()).thenReturn("{\"username\":\"peacemaker\"}");
+        when(cognitoUserService.createUser(any(JsonObject.class), any(), any())).thenReturn(new JsonObject());
+
+        // Act
+        APIGatewayProxyResponseEvent responseEvent = createUserHandler.handleRequest(apiGatewayProxyRequestEvent, context);
+
+        // Assert
+        assertEquals(200, responseEvent.getStatusCode());
+        assertFalse(responseEvent.getBody().contains("warmUp"));
+        verify(cognitoUserService, times(1)).createUser(any(JsonObject.class), any(), any());
+    }
 }
@@ -0,0 +1,99 @@
+package com.appdeveloperblog.aws.errorresponse;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
+import com.appdeveloperblog.aws.errorresponse.shared.AuthorizerContext;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class GetUserByUsernameHandlerTest {
+
+    private static final Map<String, Object> AUTHORIZER = Map.of(
+            AuthorizerContext.SUB, "b3f1c1e0-sub",
+            AuthorizerContext.USERNAME, "peacemaker",
+            AuthorizerContext.EMAIL, "peacemaker@peace.com");
+
+    @Mock
+    CognitoUserService cognitoUserService;
+
+    @Mock
+    Context context;
+
+    @Mock
+    LambdaLogger logger;
+
+    GetUserByUsernameHandler getUserByUsernameHandler;
+
+    @BeforeEach
+    public void runBeforeEachTestMethod() {
+        when(context.getLogger()).thenReturn(logger);
+        getUserByUsernameHandler = new GetUserByUsernameHandler(cognitoUserService, true);
+    }
+
+    @Test
+    public void testHandleRequest_whenContextModeAndOwnUsername_returnsUserWithoutCallingCognito() {
+        APIGatewayProxyResponseEvent responseEvent = getUserByUsernameHandler.handleRequest(request("peacemaker"),
+                context);
+        JsonObject responseBodyJson = JsonParser.parseString(responseEvent.getBody()).getAsJsonObject();
+
+        assertEquals(200, responseEvent.getStatusCode());
+        assertEquals("b3f1c1e0-sub", responseBodyJson.get(AuthorizerContext.SUB).getAsString());
+        assertEquals("peacemaker@peace.com", responseBodyJson.get(AuthorizerContext.EMAIL).getAsString());
+        verifyNoInteractions(cognitoUserService);
+    }
+
+    @Test
+    public void testHandleRequest_whenContextModeAndOtherUsername_asksCognito() {
+        JsonObject userDetails = new JsonObject();
+        userDetails.addProperty("email", "smith@peace.com");
+        when(cognitoUserService.getUserByUsername(eq("smith"), any())).thenReturn(userDetails);
+
+        APIGatewayProxyResponseEvent responseEvent = getUserByUsernameHandler.handleRequest(request("smith"), context);
+        JsonObject responseBodyJson = JsonParser.parseString(responseEvent.getBody()).getAsJsonObject();
+
+        assertEquals(200, responseEvent.getStatusCode());
+        assertEquals("smith@peace.com", responseBodyJson.get("email").getAsString());
+        verify(cognitoUserService, times(1)).getUserByUsername(eq("smith"), any());
+    }
+
+    @Test
+    public void testHandleRequest_whenErrorMessageHasQuotes_returnsValidJsonError() {
+        when(cognitoUserService.getUserByUsername(eq("smith"), any()))
+                .thenThrow(new IllegalArgumentException("User \"smith\" not found in C:\\pool"));
+
+        APIGatewayProxyResponseEvent responseEvent = getUserByUsernameHandler.handleRequest(request("smith"), context);
+        JsonObject responseBodyJson = JsonParser.parseString(responseEvent.getBody()).getAsJsonObject();
+
+        assertEquals(500, responseEvent.getStatusCode());
+        assertEquals("User \"smith\" not found in C:\\pool", responseBodyJson.get("message").getAsString());
+    }
+
+    private static APIGatewayProxyRequestEvent request(String username) {
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod("GET")
+                .withPathParameters(Map.of("username", username))
+                .withRequestContext(authorizedContext());
+    }
+
+    private static APIGatewayProxyRequestEvent.ProxyRequestContext authorizedContext() {
+        APIGatewayProxyRequestEvent.ProxyRequestContext requestContext = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        requestContext.setAuthorizer(AUTHORIZER);
+        return requestContext;
+    }
+}
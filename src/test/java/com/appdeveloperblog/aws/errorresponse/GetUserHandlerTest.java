@@ -0,0 +1,117 @@
+package com.appdeveloperblog.aws.errorresponse;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
+import com.appdeveloperblog.aws.errorresponse.shared.AuthorizerContext;
+import com.appdeveloperblog.aws.errorresponse.shared.Constants;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class GetUserHandlerTest {
+
+    private static final Map<String, Object> AUTHORIZER = Map.of(
+            AuthorizerContext.SUB, "b3f1c1e0-sub",
+            AuthorizerContext.USERNAME, "peacemaker",
+            AuthorizerContext.EMAIL, "peacemaker@peace.com");
+
+    @Mock
+    CognitoUserService cognitoUserService;
+
+    @Mock
+    Context context;
+
+    @Mock
+    LambdaLogger logger;
+
+    @BeforeEach
+    public void runBeforeEachTestMethod() {
+        when(context.getLogger()).thenReturn(logger);
+    }
+
+    @Test
+    public void testHandleRequest_whenContextModeAndOwnAccessToken_returnsUserWithoutCallingCognito() {
+        GetUserHandler getUserHandler = new GetUserHandler(cognitoUserService, true);
+
+        APIGatewayProxyResponseEvent responseEvent = getUserHandler.handleRequest(
+                request(accessToken("b3f1c1e0-sub")), context);
+        JsonObject responseBodyJson = JsonParser.parseString(responseEvent.getBody()).getAsJsonObject();
+
+        assertEquals(200, responseEvent.getStatusCode());
+        assertTrue(responseBodyJson.get(Constants.IS_SUCCESSFUL).getAsBoolean());
+        assertEquals(200, responseBodyJson.get(Constants.STATUS_CODE).getAsInt());
+        assertEquals("peacemaker@peace.com", responseBodyJson.getAsJsonObject("user").get("email").getAsString());
+        verifyNoInteractions(cognitoUserService);
+    }
+
+    @Test
+    public void testHandleRequest_whenContextModeAndAccessTokenOfOtherUser_asksCognito() {
+        String accessToken = accessToken("other-sub");
+        when(cognitoUserService.getUser(accessToken)).thenReturn(getUserResult("other@peace.com"));
+        GetUserHandler getUserHandler = new GetUserHandler(cognitoUserService, true);
+
+        APIGatewayProxyResponseEvent responseEvent = getUserHandler.handleRequest(request(accessToken), context);
+        JsonObject responseBodyJson = JsonParser.parseString(responseEvent.getBody()).getAsJsonObject();
+
+        assertEquals("other@peace.com", responseBodyJson.getAsJsonObject("user").get("email").getAsString());
+        verify(cognitoUserService, times(1)).getUser(accessToken);
+    }
+
+    @Test
+    public void testHandleRequest_whenContextModeOff_asksCognito() {
+        String accessToken = accessToken("b3f1c1e0-sub");
+        when(cognitoUserService.getUser(accessToken)).thenReturn(getUserResult("peacemaker@peace.com"));
+        GetUserHandler getUserHandler = new GetUserHandler(cognitoUserService, false);
+
+        APIGatewayProxyResponseEvent responseEvent = getUserHandler.handleRequest(request(accessToken), context);
+
+        assertEquals(200, responseEvent.getStatusCode());
+        verify(cognitoUserService, times(1)).getUser(accessToken);
+    }
+
+    private static APIGatewayProxyRequestEvent request(String accessToken) {
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod("GET")
+                .withHeaders(Map.of("AccessToken", accessToken))
+                .withRequestContext(authorizedContext());
+    }
+
+    private static JsonObject getUserResult(String email) {
+        JsonObject user = new JsonObject();
+        user.addProperty("email", email);
+
+        JsonObject getUserResult = new JsonObject();
+        getUserResult.addProperty(Constants.IS_SUCCESSFUL, true);
+        getUserResult.addProperty(Constants.STATUS_CODE, 200);
+        getUserResult.add("user", user);
+        return getUserResult;
+    }
+
+    private static String accessToken(String subject) {
+        return JWT.create()
+                .withSubject(subject)
+                .withClaim("token_use", "access")
+                .sign(Algorithm.HMAC256("secret"));
+    }
+
+    private static APIGatewayProxyRequestEvent.ProxyRequestContext authorizedContext() {
+        APIGatewayProxyRequestEvent.ProxyRequestContext requestContext = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        requestContext.setAuthorizer(AUTHORIZER);
+        return requestContext;
+    }
+}
@@ -0,0 +1,53 @@
+package com.appdeveloperblog.aws.errorresponse.authorizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuthorizerDecisionCacheTest {
+
+    AuthorizerDecisionCache decisionCache = new AuthorizerDecisionCache(100, Duration.ofHours(1), Duration.ofSeconds(30));
+
+    @Test
+    public void testGet_whenAllowDecisionCached_returnsDecisionAndCountsHit() {
+        Date expiresAt = new Date(System.currentTimeMillis() + 60_000);
+        decisionCache.putAllow("token", "user-sub", expiresAt, Map.of());
+
+        AuthorizerDecisionCache.Decision decision = decisionCache.get("token");
+
+        assertNotNull(decision);
+        assertEquals("Allow", decision.getEffect());
+        assertEquals("user-sub", decision.getPrincipalId());
+        assertEquals(1, decisionCache.getHitCount());
+        assertEquals(0, decisionCache.getMissCount());
+    }
+
+    @Test
+    public void testGet_whenTokenHasExpired_returnsNullAndCountsMiss() {
+        Date expiresAt = new Date(System.currentTimeMillis() - 1_000);
+        decisionCache.putAllow("token", "user-sub", expiresAt, Map.of());
+
+        assertNull(decisionCache.get("token"));
+        assertEquals(1, decisionCache.getMissCount());
+        assertEquals(0, decisionCache.size());
+    }
+
+    @Test
+    public void testGet_whenDenyDecisionCached_returnsDenyWithoutPrincipal() {
+        decisionCache.putDeny("bad-token");
+
+        AuthorizerDecisionCache.Decision decision = decisionCache.get("bad-token");
+
+        assertEquals("Deny", decision.getEffect());
+        assertNull(decision.getPrincipalId());
+    }
+
+    @Test
+    public void testGet_whenTokenIsNull_returnsNull() {
+        assertNull(decisionCache.get(null));
+    }
+}
@@ -0,0 +1,169 @@
+package com.appdeveloperblog.aws.errorresponse.authorizer;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.appdeveloperblog.aws.errorresponse.authorizer.AuthorizerPolicyFactory.PolicyMode;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuthorizerPolicyFactoryTest {
+
+    private static final String REGION = "us-east-1";
+
+    @Test
+    public void testBuildPolicyDocument_whenSameRequestContextRepeats_returnsSameDocument() {
+        AuthorizerPolicyFactory policyFactory = new AuthorizerPolicyFactory(PolicyMode.METHOD, List.of());
+
+        PolicyDocument first = policyFactory.buildPolicyDocument(REGION, requestContext("GET"), "Allow");
+        PolicyDocument second = policyFactory.buildPolicyDocument(REGION, requestContext("GET"), "Allow");
+
+        assertSame(first, second);
+        assertEquals("arn:aws:execute-api:us-east-1:123456789012:abcdef1234/Prod/GET/*",
+                first.Statement.get(0).Resource);
+        assertThrows(UnsupportedOperationException.class, () -> first.Statement.add(first.Statement.get(0)));
+    }
+
+    @Test
+    public void testBuildPolicyDocument_whenMethodOrEffectDiffers_returnsSeparateDocuments() {
+        AuthorizerPolicyFactory policyFactory = new AuthorizerPolicyFactory(PolicyMode.METHOD, List.of());
+
+        PolicyDocument allowGet = policyFactory.buildPolicyDocument(REGION, requestContext("GET"), "Allow");
+        PolicyDocument allowPost = policyFactory.buildPolicyDocument(REGION, requestContext("POST"), "Allow");
+        PolicyDocument denyGet = policyFactory.buildPolicyDocument(REGION, requestContext("GET"), "Deny");
+
+        assertNotSame(allowGet, allowPost);
+        assertEquals("Deny", denyGet.Statement.get(0).Effect);
+        assertTrue(allowPost.Statement.get(0).Resource.endsWith("/POST/*"));
+    }
+
+    @Test
+    public void testBuildPolicyDocument_whenApiModeUsed_sharesDocumentAcrossMethods() {
+        AuthorizerPolicyFactory policyFactory = new AuthorizerPolicyFactory(PolicyMode.API,
+                List.of("GET/users/*", "POST/users/*/group"));
+
+        PolicyDocument get = policyFactory.buildPolicyDocument(REGION, requestContext("GET"), "Allow");
+        PolicyDocument post = policyFactory.buildPolicyDocument(REGION, requestContext("POST"), "Allow");
+
+        assertSame(get, post);
+        assertEquals(2, get.Statement.size());
+    }
+
+    @Test
+    public void testBuildPolicyDocument_whenApiModeAllows_returnsStatementPerConfiguredRoute() {
+        AuthorizerPolicyFactory policyFactory = new AuthorizerPolicyFactory(PolicyMode.API,
+                List.of("GET/users/*", "POST/users/*/group"));
+
+        PolicyDocument policyDocument = policyFactory.buildPolicyDocument(REGION, requestContext("GET"), "Allow");
+
+        assertEquals(List.of(
+                "arn:aws:execute-api:us-east-1:123456789012:abcdef1234/Prod/GET/users/*",
+                "arn:aws:execute-api:us-east-1:123456789012:abcdef1234/Prod/POST/users/*/group"),
+                List.of(policyDocument.Statement.get(0).Resource, policyDocument.Statement.get(1).Resource));
+        assertTrue(policyDocument.Statement.stream().allMatch(statement -> "Allow".equals(statement.Effect)
+                && "execute-api:Invoke".equals(statement.Action)));
+    }
+
+    @Test
+    public void testBuildPolicyDocument_whenApiModeDenies_coversWholeApi() {
+        AuthorizerPolicyFactory policyFactory = new AuthorizerPolicyFactory(PolicyMode.API, List.of("GET/users/*"));
+
+        PolicyDocument policyDocument = policyFactory.buildPolicyDocument(REGION, requestContext("POST"), "Deny");
+
+        assertEquals(1, policyDocument.Statement.size());
+        assertEquals("Deny", policyDocument.Statement.get(0).Effect);
+        assertEquals("arn:aws:execute-api:us-east-1:123456789012:abcdef1234/Prod/*/*",
+                policyDocument.Statement.get(0).Resource);
+    }
+
+    @Test
+    public void testBuildPolicyDocument_whenGroupsDiffer_allowsEachPrincipalOnlyItsGroupRoutes() {
+        AuthorizerPolicyFactory policyFactory = new AuthorizerPolicyFactory(PolicyMode.API, List.of("GET/users/*"),
+                Map.of("admins", List.of("POST/users/*/group")));
+
+        PolicyDocument reader = policyFactory.buildPolicyDocument(REGION, requestContext("GET"), "Allow", "readers");
+        PolicyDocument admin = policyFactory.buildPolicyDocument(REGION, requestContext("GET"), "Allow",
+                "readers,admins");
+        PolicyDocument otherAdmin = policyFactory.buildPolicyDocument(REGION, requestContext("POST"), "Allow",
+                "admins,support");
+
+        assertEquals(List.of("arn:aws:execute-api:us-east-1:123456789012:abcdef1234/Prod/GET/users/*"),
+                List.of(reader.Statement.get(0).Resource));
+        assertEquals(List.of(
+                "arn:aws:execute-api:us-east-1:123456789012:abcdef1234/Prod/GET/users/*",
+                "arn:aws:execute-api:us-east-1:123456789012:abcdef1234/Prod/POST/users/*/group"),
+                List.of(admin.Statement.get(0).Resource, admin.Statement.get(1).Resource));
+        assertEquals(1, reader.Statement.size());
+        assertSame(admin, otherAdmin);
+    }
+
+    @Test
+    public void testBuildPolicyDocument_whenPrincipalHasNoEntitledRoute_deniesWholeApi() {
+        AuthorizerPolicyFactory policyFactory = new AuthorizerPolicyFactory(PolicyMode.API, List.of(),
+                Map.of("admins", List.of("POST/users/*/group")));
+
+        PolicyDocument policyDocument = policyFactory.buildPolicyDocument(REGION, requestContext("GET"), "Allow",
+                "readers");
+
+        assertEquals(1, policyDocument.Statement.size());
+        assertEquals("Deny", policyDocument.Statement.get(0).Effect);
+        assertEquals("arn:aws:execute-api:us-east-1:123456789012:abcdef1234/Prod/*/*",
+                policyDocument.Statement.get(0).Resource);
+    }
+
+    @Test
+    public void testParseGroupRoutes_whenEntriesGiven_mapsEachGroupToItsRoutes() {
+        assertEquals(Map.of(), AuthorizerPolicyFactory.parseGroupRoutes(null));
+        assertEquals(Map.of("admins", List.of("GET/*", "POST/*"), "readers", List.of("GET/users/*")),
+                AuthorizerPolicyFactory.parseGroupRoutes(" admins = GET/*, POST/* ;; readers=GET/users/* "));
+        assertThrows(IllegalArgumentException.class, () -> AuthorizerPolicyFactory.parseGroupRoutes("admins="));
+        assertThrows(IllegalArgumentException.class, () -> AuthorizerPolicyFactory.parseGroupRoutes("=GET/*"));
+        assertThrows(IllegalArgumentException.class, () -> AuthorizerPolicyFactory.parseGroupRoutes("admins=users"));
+    }
+
+    @Test
+    public void testParseRoutes_whenListEmptyOrBlank_allowsAllRoutes() {
+        assertEquals(List.of("*/*"), AuthorizerPolicyFactory.parseRoutes(null));
+        assertEquals(List.of("*/*"), AuthorizerPolicyFactory.parseRoutes("  "));
+        assertEquals(List.of("*/*"), AuthorizerPolicyFactory.parseRoutes(" , ,"));
+        assertEquals(List.of("GET/users/*", "POST/users/*/group"),
+                AuthorizerPolicyFactory.parseRoutes(" GET/users/* ,, POST/users/*/group "));
+    }
+
+    @Test
+    public void testParseRoutes_whenRouteMalformed_throwsIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> AuthorizerPolicyFactory.parseRoutes("GET/users/*,users"));
+        assertThrows(IllegalArgumentException.class, () -> AuthorizerPolicyFactory.parseRoutes("/users"));
+        assertThrows(IllegalArgumentException.class, () -> AuthorizerPolicyFactory.parseRoutes("GET/"));
+    }
+
+    @Test
+    public void testPolicyDocument_whenShared_cannotBeModified() {
+        for (Class<?> type : List.of(PolicyDocument.class, Statement.class)) {
+            for (Field field : type.getDeclaredFields()) {
+                assertTrue(Modifier.isFinal(field.getModifiers()), type.getSimpleName() + "." + field.getName());
+            }
+        }
+
+        List<Statement> statements = new ArrayList<>();
+        statements.add(Statement.builder().action("execute-api:Invoke").effect("Allow").resource("*").build());
+        PolicyDocument policyDocument = PolicyDocument.builder().version("2012-10-17").statements(statements).build();
+        statements.clear();
+
+        assertEquals(1, policyDocument.Statement.size());
+        assertThrows(UnsupportedOperationException.class, () -> policyDocument.Statement.clear());
+    }
+
+    private static APIGatewayProxyRequestEvent.ProxyRequestContext requestContext(String httpMethod) {
+        return new APIGatewayProxyRequestEvent.ProxyRequestContext()
+                .withAccountId("123456789012")
+                .withApiId("abcdef1234")
+                .withStage("Prod")
+                .withHttpMethod(httpMethod);
+    }
+}
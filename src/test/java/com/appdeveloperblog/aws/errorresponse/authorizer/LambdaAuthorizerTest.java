@@ -0,0 +1,151 @@
+package com.appdeveloperblog.aws.errorresponse.authorizer;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.appdeveloperblog.aws.errorresponse.shared.AuthorizerContext;
+import com.appdeveloperblog.aws.errorresponse.stub.JwksStubServer;
+import com.appdeveloperblog.aws.errorresponse.stub.TokenFactory;
+import com.appdeveloperblog.aws.errorresponse.utils.AwsCognitoRSAKeyProvider;
+import com.appdeveloperblog.aws.errorresponse.utils.JwksKeyStore;
+import com.appdeveloperblog.aws.errorresponse.utils.JwtUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class LambdaAuthorizerTest {
+
+    private static final String REGION = "us-east-1";
+    private static final String USER_POOL_ID = "us-east-1_authorizertest";
+    private static final String APP_CLIENT_ID = "authorizer-test-client";
+
+    private static JwksStubServer keyServer;
+
+    @Mock
+    Context context;
+
+    @Mock
+    LambdaLogger logger;
+
+    private TokenFactory tokenFactory;
+    private LambdaAuthorizer lambdaAuthorizer;
+
+    @BeforeAll
+    public static void startKeyServer() throws IOException {
+        keyServer = JwksStubServer.start();
+    }
+
+    @AfterAll
+    public static void stopKeyServer() {
+        keyServer.close();
+        JwksKeyStore.clear();
+    }
+
+    @BeforeEach
+    public void runBeforeEachTestMethod() {
+        when(context.getLogger()).thenReturn(logger);
+        tokenFactory = new TokenFactory(keyServer, REGION, USER_POOL_ID, APP_CLIENT_ID);
+        lambdaAuthorizer = new LambdaAuthorizer(new JwtUtils(keyServer.getBaseUrl()), REGION, USER_POOL_ID,
+                APP_CLIENT_ID);
+    }
+
+    @Test
+    public void testHandleRequest_whenValidTokenProvided_returnsAllowWithClaimsContext() {
+        AuthorizerOutput output = lambdaAuthorizer.handleRequest(request(tokenFactory.valid("peacemaker")), context);
+
+        assertEquals("Allow", output.getPolicyDocument().Statement.get(0).Effect);
+        assertEquals("peacemaker", output.getContext().get(AuthorizerContext.USERNAME));
+        assertEquals("users", output.getContext().get(AuthorizerContext.GROUPS));
+        assertTrue(keyServer.getFetchCount() >= 1, "jwks.json should be fetched from the key server");
+    }
+
+    @Test
+    public void testHandleRequest_whenExpiredTokenProvided_returnsDeny() {
+        AuthorizerOutput output = lambdaAuthorizer.handleRequest(request(tokenFactory.expired("peacemaker")), context);
+
+        assertEquals("Deny", output.getPolicyDocument().Statement.get(0).Effect);
+    }
+
+    @Test
+    public void testHandleRequest_whenTokenForAnotherClientProvided_returnsDeny() {
+        AuthorizerOutput output = lambdaAuthorizer.handleRequest(request(tokenFactory.wrongAudience("peacemaker")),
+                context);
+
+        assertEquals("Deny", output.getPolicyDocument().Statement.get(0).Effect);
+    }
+
+    @Test
+    public void testHandleRequest_whenTokenSignedWithRotatedKey_refetchesJwksOncePerInterval() throws Exception {
+        // Own key server, rotating the shared one would leave the other tests with unknown kids
+        try (JwksStubServer rotatingKeyServer = JwksStubServer.start()) {
+            TokenFactory rotatingTokenFactory = new TokenFactory(rotatingKeyServer, REGION, USER_POOL_ID, APP_CLIENT_ID);
+            LambdaAuthorizer authorizer = new LambdaAuthorizer(new JwtUtils(rotatingKeyServer.getBaseUrl()), REGION,
+                    USER_POOL_ID, APP_CLIENT_ID);
+
+            // Keys loaded exactly one refetch interval ago, so an unknown kid may trigger one refetch
+            String keyId = rotatingKeyServer.getCurrentKeyId();
+            JwksKeyStore.seed(AwsCognitoRSAKeyProvider.getKeySetUrl(rotatingKeyServer.getBaseUrl(), REGION, USER_POOL_ID),
+                    Map.of(keyId, (RSAPublicKey) rotatingKeyServer.getKeyPair(keyId).getPublic()),
+                    Instant.now().minus(JwksKeyStore.MIN_REFETCH_INTERVAL));
+
+            AuthorizerOutput rotated = authorizer.handleRequest(
+                    request(rotatingTokenFactory.rotatedKid("peacemaker")), context);
+
+            assertEquals("Allow", rotated.getPolicyDocument().Statement.get(0).Effect);
+            assertEquals(1, rotatingKeyServer.getFetchCount());
+
+            // A second rotation within the interval is not fetched
+            AuthorizerOutput rotatedAgain = authorizer.handleRequest(
+                    request(rotatingTokenFactory.rotatedKid("smith")), context);
+
+            assertEquals("Deny", rotatedAgain.getPolicyDocument().Statement.get(0).Effect);
+            assertEquals(1, rotatingKeyServer.getFetchCount());
+        }
+    }
+
+    @Test
+    public void testHandleRequest_whenWarmUpPingReceived_returnsDenyAllPolicy() {
+        APIGatewayProxyRequestEvent ping = new APIGatewayProxyRequestEvent().withHeaders(Map.of("X-Warm-Up", "true"));
+
+        AuthorizerOutput output = lambdaAuthorizer.handleRequest(ping, context);
+
+        assertNotNull(output.getPolicyDocument(), "An authorizer response must always carry a policy");
+        assertEquals("Deny", output.getPolicyDocument().Statement.get(0).Effect);
+        assertNotNull(output.getContext().get("primingMillis"));
+    }
+
+    @Test
+    public void testHandleRequest_whenApiRequestCarriesWarmUpHeader_verifiesToken() {
+        APIGatewayProxyRequestEvent request = request("not-a-jwt")
+                .withHeaders(Map.of("Authorization", "not-a-jwt", "X-Warm-Up", "true"));
+
+        AuthorizerOutput output = lambdaAuthorizer.handleRequest(request, context);
+
+        assertEquals("Deny", output.getPolicyDocument().Statement.get(0).Effect);
+        assertNotEquals("warm-up", output.getPrincipalId());
+    }
+
+    private static APIGatewayProxyRequestEvent request(String token) {
+        return new APIGatewayProxyRequestEvent()
+                .withHeaders(Map.of("Authorization", token))
+                .withPathParameters(Map.of("username", "peacemaker"))
+                .withRequestContext(new APIGatewayProxyRequestEvent.ProxyRequestContext()
+                        .withAccountId("123456789012")
+                        .withApiId("abcdef1234")
+                        .withStage("Prod")
+                        .withHttpMethod("GET"));
+    }
+}
@@ -0,0 +1,98 @@
+package com.appdeveloperblog.aws.errorresponse.load;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.appdeveloperblog.aws.errorresponse.authorizer.AuthorizerOutput;
+import com.appdeveloperblog.aws.errorresponse.authorizer.LambdaAuthorizer;
+import com.appdeveloperblog.aws.errorresponse.stub.JwksStubServer;
+import com.appdeveloperblog.aws.errorresponse.stub.TokenFactory;
+import com.appdeveloperblog.aws.errorresponse.utils.AwsCognitoRSAKeyProvider;
+import com.appdeveloperblog.aws.errorresponse.utils.JwtUtils;
+
+import java.util.Map;
+
+/**
+ * Drives {@link LambdaAuthorizer} with a realistic token mix against {@link JwksStubServer}, fully offline.
+ * <p>
+ * Out of every 100 requests 90 carry a valid token (drawn from a pool of users, so the decision cache sees repeats),
+ * 5 an expired token, 3 a token for another app client and 2 a token signed with a key rotated in after the
+ * authorizer loaded jwks.json; those are denied until JwksKeyStore allows the next refetch. Denied requests are
+ * reported as errors. Optional arguments: {@code concurrency requests users}.
+ */
+public class AuthorizerLoadDriver {
+
+    private static final String REGION = "us-east-1";
+    private static final String USER_POOL_ID = "us-east-1_authorizerload";
+    private static final String APP_CLIENT_ID = "authorizer-load-client";
+    private static final int ROTATIONS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int users = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+
+        try (JwksStubServer keyServer = JwksStubServer.start()) {
+            TokenFactory tokenFactory = new TokenFactory(keyServer, REGION, USER_POOL_ID, APP_CLIENT_ID);
+
+            String[] validTokens = new String[users];
+            String[] expiredTokens = new String[users];
+            String[] wrongAudienceTokens = new String[users];
+            for (int i = 0; i < users; i++) {
+                validTokens[i] = tokenFactory.valid("user-" + i);
+                expiredTokens[i] = tokenFactory.expired("user-" + i);
+                wrongAudienceTokens[i] = tokenFactory.wrongAudience("user-" + i);
+            }
+
+            // Keys as the authorizer sees them before the rotation
+            new AwsCognitoRSAKeyProvider(keyServer.getBaseUrl(), REGION, USER_POOL_ID).preload();
+
+            String[] rotatedTokens = new String[ROTATIONS];
+            for (int i = 0; i < ROTATIONS; i++) {
+                rotatedTokens[i] = tokenFactory.rotatedKid("rotated-" + i);
+            }
+
+            LambdaAuthorizer authorizer = new LambdaAuthorizer(
+                    new JwtUtils(keyServer.getBaseUrl()), REGION, USER_POOL_ID, APP_CLIENT_ID);
+
+            HandlerLoadDriver.Report report = new HandlerLoadDriver(concurrency).run(
+                    "LambdaAuthorizer (errors = Deny)",
+                    authorizer,
+                    i -> request(pickToken(i, validTokens, expiredTokens, wrongAudienceTokens, rotatedTokens)),
+                    AuthorizerLoadDriver::isDeny,
+                    requests);
+
+            System.out.println(report);
+            System.out.println("jwks.json fetches: " + keyServer.getFetchCount());
+        }
+    }
+
+    private static String pickToken(int i, String[] validTokens, String[] expiredTokens,
+                                    String[] wrongAudienceTokens, String[] rotatedTokens) {
+        int slot = i % 100;
+        int user = (i / 100 + i) % validTokens.length;
+        if (slot < 90) {
+            return validTokens[user];
+        } else if (slot < 95) {
+            return expiredTokens[user];
+        } else if (slot < 98) {
+            return wrongAudienceTokens[user];
+        }
+        return rotatedTokens[i % rotatedTokens.length];
+    }
+
+    private static APIGatewayProxyRequestEvent request(String token) {
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod("GET")
+                .withHeaders(Map.of("Authorization", token))
+                .withPathParameters(Map.of("username", "user"))
+                .withRequestContext(new APIGatewayProxyRequestEvent.ProxyRequestContext()
+                        .withAccountId("123456789012")
+                        .withApiId("abcdef1234")
+                        .withStage("Prod")
+                        .withHttpMethod("GET"));
+    }
+
+    private static boolean isDeny(AuthorizerOutput output) {
+        return output.getPolicyDocument() == null
+                || output.getPolicyDocument().Statement.stream().anyMatch(statement -> !"Allow".equals(statement.Effect));
+    }
+}
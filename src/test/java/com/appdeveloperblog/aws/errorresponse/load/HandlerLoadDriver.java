@@ -0,0 +1,317 @@
+package com.appdeveloperblog.aws.errorresponse.load;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.appdeveloperblog.aws.errorresponse.AddUserToGroupHandler;
+import com.appdeveloperblog.aws.errorresponse.ConfirmUserHandler;
+import com.appdeveloperblog.aws.errorresponse.CreateUserHandler;
+import com.appdeveloperblog.aws.errorresponse.GetUserByUsernameHandler;
+import com.appdeveloperblog.aws.errorresponse.GetUserHandler;
+import com.appdeveloperblog.aws.errorresponse.LoginUserHandler;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoUserService;
+import com.appdeveloperblog.aws.errorresponse.stub.CognitoStubServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * Drives the handlers end to end against {@link CognitoStubServer}: request event, JSON parsing,
+ * CognitoUserService, the real SDK client and HTTP stack, and back. Fully offline.
+ * <p>
+ * Run the main method with optional arguments {@code concurrency requestsPerHandler latencyMillis errorRate},
+ * e.g. {@code 32 5000 20 0.01}. Note that CognitoUserService still applies the client-side rate limits; raise them
+ * with the COGNITO_RATE_&lt;CATEGORY&gt; environment variables to measure the handlers instead of the limiter.
+ */
+public class HandlerLoadDriver {
+
+    private static final String APP_CLIENT_ID = "load-client";
+    private static final String APP_CLIENT_SECRET = "load-client-secret";
+    private static final String USER_POOL_ID = "us-east-1_load";
+    private static final String PASSWORD = "Load-test-1";
+
+    private final int concurrency;
+
+    public HandlerLoadDriver(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Invokes the handler {@code totalRequests} times from {@code concurrency} threads. Responses with a status code
+     * of 400 or more count as errors.
+     */
+    public Report run(String name,
+                      RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler,
+                      IntFunction<APIGatewayProxyRequestEvent> requests,
+                      int totalRequests) throws InterruptedException {
+        return run(name, handler, requests,
+                response -> response.getStatusCode() == null || response.getStatusCode() >= 400, totalRequests);
+    }
+
+    /**
+     * Invokes the handler {@code totalRequests} times from {@code concurrency} threads, counting the outputs matching
+     * {@code isError} as errors.
+     */
+    public <O> Report run(String name,
+                          RequestHandler<APIGatewayProxyRequestEvent, O> handler,
+                          IntFunction<APIGatewayProxyRequestEvent> requests,
+                          Predicate<O> isError,
+                          int totalRequests) throws InterruptedException {
+
+        long[] latencies = new long[totalRequests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        Context context = new LoadContext();
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        List<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(executor.submit(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < totalRequests) {
+                    APIGatewayProxyRequestEvent request = requests.apply(index);
+                    long requestStart = System.nanoTime();
+                    O response = handler.handleRequest(request, context);
+                    latencies[index] = System.nanoTime() - requestStart;
+                    if (isError.test(response)) {
+                        errors.incrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        long elapsed = System.nanoTime() - start;
+
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (Exception e) {
+                throw new IllegalStateException("Load worker failed", e);
+            }
+        }
+
+        return new Report(name, totalRequests, errors.get(), elapsed, latencies);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int requestsPerHandler = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        double errorRate = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+
+        try (CognitoStubServer stub = CognitoStubServer.start(concurrency * 2)) {
+            stub.withLatency(latencyMillis, latencyMillis / 2)
+                    .withErrors(errorRate, "TooManyRequestsException", 400);
+
+            for (int i = 0; i < requestsPerHandler; i++) {
+                stub.putUser("confirmed-" + i, PASSWORD, Map.of("email", "confirmed-" + i + "@example.com"), true);
+                stub.putUser("unconfirmed-" + i, PASSWORD, Map.of("email", "unconfirmed-" + i + "@example.com"), false);
+            }
+
+            SdkHttpClient httpClient = ApacheHttpClient.builder().maxConnections(concurrency).build();
+            try (CognitoIdentityProviderClient client = CognitoIdentityProviderClient.builder()
+                    .region(Region.US_EAST_1)
+                    .endpointOverride(stub.getEndpoint())
+                    .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("load", "load")))
+                    .httpClient(httpClient)
+                    .build()) {
+
+                CognitoUserService cognitoUserService = new CognitoUserService(client);
+                HandlerLoadDriver driver = new HandlerLoadDriver(concurrency);
+
+                System.out.println(driver.run("CreateUserHandler",
+                        new CreateUserHandler(cognitoUserService, APP_CLIENT_ID, APP_CLIENT_SECRET),
+                        i -> request("{\"firstName\":\"Load\",\"lastName\":\"Test\",\"email\":\"new-" + i
+                                + "@example.com\",\"username\":\"new-" + i + "\",\"password\":\"" + PASSWORD + "\"}"),
+                        requestsPerHandler));
+
+                System.out.println(driver.run("ConfirmUserHandler",
+                        new ConfirmUserHandler(cognitoUserService, APP_CLIENT_ID, APP_CLIENT_SECRET),
+                        i -> request("{\"username\":\"unconfirmed-" + i + "\",\"code\":\""
+                                + CognitoStubServer.CONFIRMATION_CODE + "\"}"),
+                        requestsPerHandler));
+
+                System.out.println(driver.run("LoginUserHandler",
+                        new LoginUserHandler(cognitoUserService, APP_CLIENT_ID, APP_CLIENT_SECRET),
+                        i -> request("{\"username\":\"confirmed-" + i + "\",\"password\":\"" + PASSWORD + "\"}"),
+                        requestsPerHandler));
+
+                System.out.println(driver.run("GetUserHandler",
+                        new GetUserHandler(cognitoUserService, false),
+                        i -> request(null).withHeaders(Map.of("AccessToken", stub.accessTokenFor("confirmed-" + i))),
+                        requestsPerHandler));
+
+                System.out.println(driver.run("GetUserByUsernameHandler",
+                        new GetUserByUsernameHandler(cognitoUserService, false),
+                        i -> request(null).withPathParameters(Map.of("username", "confirmed-" + i)),
+                        requestsPerHandler));
+
+                System.out.println(driver.run("AddUserToGroupHandler",
+                        new AddUserToGroupHandler(cognitoUserService, USER_POOL_ID),
+                        i -> request("{\"groupName\":\"load-test\"}")
+                                .withPathParameters(Map.of("username", "confirmed-" + i)),
+                        requestsPerHandler));
+
+                System.out.println("Stub requests: SignUp=" + stub.getRequestCount("SignUp")
+                        + ", ConfirmSignUp=" + stub.getRequestCount("ConfirmSignUp")
+                        + ", InitiateAuth=" + stub.getRequestCount("InitiateAuth")
+                        + ", GetUser=" + stub.getRequestCount("GetUser")
+                        + ", AdminGetUser=" + stub.getRequestCount("AdminGetUser")
+                        + ", AdminAddUserToGroup=" + stub.getRequestCount("AdminAddUserToGroup"));
+                System.out.println(cognitoUserService.getLatencySnapshot());
+            } finally {
+                httpClient.close();
+            }
+        }
+    }
+
+    private static APIGatewayProxyRequestEvent request(String body) {
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod("POST")
+                .withHeaders(Map.of("Content-Type", "application/json"))
+                .withBody(body);
+    }
+
+    public static final class Report {
+
+        private final String name;
+        private final int requests;
+        private final int errors;
+        private final long elapsedNanos;
+        private final long[] sortedLatencies;
+
+        Report(String name, int requests, int errors, long elapsedNanos, long[] latencies) {
+            this.name = name;
+            this.requests = requests;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.sortedLatencies = latencies.clone();
+            Arrays.sort(this.sortedLatencies);
+        }
+
+        public int getRequests() {
+            return requests;
+        }
+
+        public int getErrors() {
+            return errors;
+        }
+
+        public double getThroughputPerSecond() {
+            return requests * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        /**
+         * Latency in milliseconds at the given percentile (0-100), nearest rank.
+         */
+        public double getPercentileMillis(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+            long nanos = sortedLatencies[Math.min(sortedLatencies.length, Math.max(rank, 1)) - 1];
+            return nanos / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-26s requests=%d errors=%d throughput=%.1f/s p50=%.2fms p90=%.2fms p99=%.2fms "
+                            + "p99.9=%.2fms max=%.2fms",
+                    name, requests, errors, getThroughputPerSecond(),
+                    getPercentileMillis(50), getPercentileMillis(90), getPercentileMillis(99),
+                    getPercentileMillis(99.9), getPercentileMillis(100));
+        }
+    }
+
+    // Discards handler logging so it does not dominate the measurement
+    private static final class LoadContext implements Context {
+
+        private static final LambdaLogger LOGGER = new LambdaLogger() {
+            @Override
+            public void log(String message) {
+            }
+
+            @Override
+            public void log(byte[] message) {
+            }
+        };
+
+        @Override
+        public String getAwsRequestId() {
+            return "load-test";
+        }
+
+        @Override
+        public String getLogGroupName() {
+            return "load-test";
+        }
+
+        @Override
+        public String getLogStreamName() {
+            return "load-test";
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "load-test";
+        }
+
+        @Override
+        public String getFunctionVersion() {
+            return "$LATEST";
+        }
+
+        @Override
+        public String getInvokedFunctionArn() {
+            return "arn:aws:lambda:us-east-1:123456789012:function:load-test";
+        }
+
+        @Override
+        public CognitoIdentity getIdentity() {
+            return null;
+        }
+
+        @Override
+        public ClientContext getClientContext() {
+            return null;
+        }
+
+        @Override
+        public int getRemainingTimeInMillis() {
+            return 900_000;
+        }
+
+        @Override
+        public int getMemoryLimitInMB() {
+            return 512;
+        }
+
+        @Override
+        public LambdaLogger getLogger() {
+            return LOGGER;
+        }
+    }
+}
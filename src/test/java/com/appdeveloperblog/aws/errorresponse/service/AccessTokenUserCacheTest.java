@@ -0,0 +1,115 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AccessTokenUserCacheTest {
+
+    @Test
+    public void testGet_whenTokenRepeats_loadsOnceAndReturnsCopies() {
+        AccessTokenUserCache cache = new AccessTokenUserCache(10, Duration.ofMinutes(5));
+        AtomicInteger loads = new AtomicInteger();
+        String accessToken = accessToken("peacemaker", Duration.ofHours(1));
+
+        JsonObject first = cache.get(accessToken, loader("peacemaker", loads));
+        first.addProperty("username", "changed");
+        JsonObject second = cache.get(accessToken, loader("peacemaker", loads));
+
+        assertEquals(1, loads.get());
+        assertEquals("peacemaker", second.get("username").getAsString());
+        assertEquals(1L, cache.getStats().get("hitCount"));
+    }
+
+    @Test
+    public void testGet_whenTokensDiffer_keepsUsersApart() {
+        AccessTokenUserCache cache = new AccessTokenUserCache(10, Duration.ofMinutes(5));
+        AtomicInteger loads = new AtomicInteger();
+
+        JsonObject peacemaker = cache.get(accessToken("peacemaker", Duration.ofHours(1)), loader("peacemaker", loads));
+        JsonObject smith = cache.get(accessToken("smith", Duration.ofHours(1)), loader("smith", loads));
+
+        assertEquals(2, loads.get());
+        assertEquals("peacemaker", peacemaker.get("username").getAsString());
+        assertEquals("smith", smith.get("username").getAsString());
+    }
+
+    @Test
+    public void testGet_whenTokenHasExpired_doesNotServeCachedUser() {
+        AccessTokenUserCache cache = new AccessTokenUserCache(10, Duration.ofMinutes(5));
+        AtomicInteger loads = new AtomicInteger();
+        String accessToken = accessToken("peacemaker", Duration.ofSeconds(-1));
+
+        cache.get(accessToken, loader("peacemaker", loads));
+        cache.get(accessToken, loader("peacemaker", loads));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testGet_whenMaximumTtlShorterThanTokenLifetime_expiresEntryAtMaximumTtl() throws InterruptedException {
+        AccessTokenUserCache cache = new AccessTokenUserCache(10, Duration.ofMillis(50));
+        AtomicInteger loads = new AtomicInteger();
+        String accessToken = accessToken("peacemaker", Duration.ofHours(1));
+
+        cache.get(accessToken, loader("peacemaker", loads));
+        Thread.sleep(100);
+        cache.get(accessToken, loader("peacemaker", loads));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testGet_whenTokenCannotBeDecoded_loadsEveryTimeWithoutCaching() {
+        AccessTokenUserCache cache = new AccessTokenUserCache(10, Duration.ofMinutes(5));
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("not-a-jwt", loader("peacemaker", loads));
+        cache.get("not-a-jwt", loader("peacemaker", loads));
+
+        assertEquals(2, loads.get());
+        assertEquals(0L, cache.getStats().get("size"));
+    }
+
+    @Test
+    public void testGetAsync_whenTokenRepeats_loadsOnce() {
+        AccessTokenUserCache cache = new AccessTokenUserCache(10, Duration.ofMinutes(5));
+        AtomicInteger loads = new AtomicInteger();
+        String accessToken = accessToken("peacemaker", Duration.ofHours(1));
+        Supplier<CompletableFuture<JsonObject>> asyncLoader =
+                () -> CompletableFuture.completedFuture(loader("peacemaker", loads).get());
+
+        cache.getAsync(accessToken, asyncLoader).join();
+        JsonObject user = cache.getAsync(accessToken, asyncLoader).join();
+
+        assertEquals(1, loads.get());
+        assertEquals("peacemaker", user.get("username").getAsString());
+    }
+
+    private static Supplier<JsonObject> loader(String username, AtomicInteger loads) {
+        return () -> {
+            loads.incrementAndGet();
+            JsonObject user = new JsonObject();
+            user.addProperty("username", username);
+            return user;
+        };
+    }
+
+    // Only decoded by the cache, so any signature will do
+    private static String accessToken(String username, Duration expiresIn) {
+        return JWT.create()
+                .withSubject(username)
+                .withClaim("token_use", "access")
+                .withExpiresAt(new Date(System.currentTimeMillis() + expiresIn.toMillis()))
+                .sign(Algorithm.HMAC256("secret"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AwsClientFactoryTest {
+
+    @Test
+    public void testOpenConnection_whenEndpointAnswersWithError_ignoresTheResponse() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        AtomicInteger requests = new AtomicInteger();
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            byte[] body = "{\"__type\":\"UnknownOperationException\"}".getBytes();
+            exchange.sendResponseHeaders(400, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        try (SdkHttpClient client = ApacheHttpClient.builder().build()) {
+            AwsClientFactory.openConnection(client,
+                    URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/"), Duration.ofSeconds(2));
+
+            assertEquals(1, requests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testOpenConnection_whenEndpointNeverAnswers_givesUpAfterTimeout() throws Exception {
+        try (ServerSocket silentServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             SdkHttpClient client = ApacheHttpClient.builder().build()) {
+            Thread acceptor = new Thread(() -> {
+                try (Socket ignored = silentServer.accept()) {
+                    Thread.sleep(5_000);
+                } catch (Exception e) {
+                    // Closed by the test
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            long start = System.nanoTime();
+            assertThrows(IllegalStateException.class, () -> AwsClientFactory.openConnection(client,
+                    URI.create("http://127.0.0.1:" + silentServer.getLocalPort() + "/"), Duration.ofMillis(200)));
+
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000);
+        }
+    }
+}
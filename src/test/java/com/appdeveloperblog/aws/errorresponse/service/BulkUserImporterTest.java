@@ -0,0 +1,69 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.appdeveloperblog.aws.errorresponse.shared.Constants;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BulkUserImporterTest {
+
+    @Mock
+    CognitoUserService cognitoUserService;
+
+    @Test
+    public void testImportUsers_whenNdjsonRecordsProvided_createsEachValidUser() {
+        JsonObject createUserResult = new JsonObject();
+        createUserResult.addProperty(Constants.IS_SUCCESSFUL, true);
+        createUserResult.addProperty(Constants.STATUS_CODE, 200);
+        when(cognitoUserService.createUserAsync(any(JsonObject.class), any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(createUserResult));
+
+        String body = "{\"username\":\"peace\",\"password\":\"p\",\"email\":\"p@peace.com\",\"firstName\":\"Peace\",\"lastName\":\"Maker\"}\n" +
+                "\n" +
+                "{\"username\":\"smith\",\"password\":\"p\"}\n";
+
+        List<JsonObject> results = new ArrayList<>();
+        int total = new BulkUserImporter(cognitoUserService, 2).importUsers(new StringReader(body),
+                BulkUserImporter.Format.NDJSON, "client-id", "client-secret", results::add);
+
+        assertEquals(2, total);
+        assertEquals(2, results.size());
+        verify(cognitoUserService, times(1)).createUserAsync(any(JsonObject.class), any(), any());
+        assertTrue(results.stream().anyMatch(result -> result.get(Constants.IS_SUCCESSFUL).getAsBoolean()
+                && result.get("username").getAsString().equals("peace")));
+        assertTrue(results.stream().anyMatch(result -> !result.get(Constants.IS_SUCCESSFUL).getAsBoolean()
+                && result.get("line").getAsInt() == 3));
+    }
+
+    @Test
+    public void testImportUsers_whenCsvRecordsProvided_mapsColumnsToUserFields() {
+        CompletableFuture<JsonObject> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("Cognito unavailable"));
+        when(cognitoUserService.createUserAsync(any(JsonObject.class), any(), any())).thenReturn(failed);
+
+        String body = "username,password,email,firstName,lastName\n" +
+                "peace,\"pa,ss\",p@peace.com,Peace,Maker\n";
+
+        List<JsonObject> results = new ArrayList<>();
+        int total = new BulkUserImporter(cognitoUserService, 1).importUsers(new StringReader(body),
+                BulkUserImporter.Format.CSV, "client-id", "client-secret", results::add);
+
+        assertEquals(1, total);
+        verify(cognitoUserService).createUserAsync(argThat(user -> user.get("password").getAsString().equals("pa,ss")),
+                any(), any());
+        assertFalse(results.get(0).get(Constants.IS_SUCCESSFUL).getAsBoolean());
+        assertEquals("Cognito unavailable", results.get(0).get("message").getAsString());
+    }
+}
@@ -0,0 +1,45 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.appdeveloperblog.aws.errorresponse.service.CognitoLatencyRecorder.Entry;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoLatencyRecorder.Operation;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoLatencyRecorder.Outcome;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CognitoLatencyRecorderTest {
+
+    CognitoLatencyRecorder recorder = new CognitoLatencyRecorder();
+
+    @Test
+    public void testSnapshot_whenLatenciesRecorded_returnsPercentilesWithinBucketPrecision() {
+        for (int millis = 1; millis <= 100; millis++) {
+            recorder.record(Operation.INITIATE_AUTH, Outcome.SUCCESS, TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        Entry entry = recorder.snapshot().get(Operation.INITIATE_AUTH, Outcome.SUCCESS);
+
+        assertEquals(100, entry.getCount());
+        assertEquals(50, entry.getPercentileMillis(50), 50 * 0.04);
+        assertEquals(99, entry.getPercentileMillis(99), 99 * 0.04);
+        assertTrue(entry.getPercentileMillis(100) >= 100);
+        assertNull(recorder.snapshot().get(Operation.INITIATE_AUTH, Outcome.ERROR));
+    }
+
+    @Test
+    public void testSnapshotAndReset_whenCalled_startsNewInterval() {
+        recorder.record(Operation.SIGN_UP, Outcome.THROTTLED, TimeUnit.MILLISECONDS.toNanos(20));
+
+        assertEquals(1, recorder.snapshotAndReset().get(Operation.SIGN_UP, Outcome.THROTTLED).getCount());
+        assertTrue(recorder.snapshot().getEntries().isEmpty());
+    }
+
+    @Test
+    public void testHistogram_whenValueIsOutOfRange_clampsIntoFirstOrLastBucket() {
+        assertEquals(0, CognitoLatencyRecorder.Histogram.indexOf(-5));
+        assertEquals(CognitoLatencyRecorder.Histogram.BUCKET_COUNT - 1,
+                CognitoLatencyRecorder.Histogram.indexOf(Long.MAX_VALUE));
+    }
+}
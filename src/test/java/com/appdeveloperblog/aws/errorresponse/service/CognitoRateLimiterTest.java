@@ -0,0 +1,133 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.appdeveloperblog.aws.errorresponse.service.CognitoRateLimiter.OperationCategory;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.appdeveloperblog.aws.errorresponse.shared.InvocationMetrics;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CognitoRateLimiterTest {
+
+    CognitoRateLimiter rateLimiter = new CognitoRateLimiter(Map.of());
+
+    @Test
+    public void testExecute_whenThrottledOnce_retriesAndReturnsResult() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = rateLimiter.execute(OperationCategory.USER_AUTHENTICATION, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw throttlingException();
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(2, attempts.get());
+        assertEquals(1L, rateLimiter.getMetrics().get("USER_AUTHENTICATION.throttled"));
+        assertEquals(1L, rateLimiter.getMetrics().get("USER_AUTHENTICATION.retried"));
+    }
+
+    @Test
+    public void testExecute_whenErrorIsNotThrottling_doesNotRetry() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(AwsServiceException.class, () -> rateLimiter.execute(OperationCategory.USER_CREATION, () -> {
+            attempts.incrementAndGet();
+            throw AwsServiceException.builder().statusCode(400).build();
+        }));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void testExecuteAsync_whenAlwaysThrottled_failsAfterMaxRetries() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<String> result = rateLimiter.executeAsync(OperationCategory.USER_ACCOUNT_READ, () -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(throttlingException());
+        });
+
+        assertThrows(Exception.class, result::join);
+        assertEquals(CognitoRateLimiter.MAX_RETRIES + 1, attempts.get());
+        assertTrue(rateLimiter.getMetrics().get("USER_ACCOUNT_READ.ratePerSecond").doubleValue() < 120);
+    }
+
+    @Test
+    public void testExecuteAsync_whenTokenNotYetAvailable_schedulesCallWithoutBlocking() {
+        CognitoRateLimiter slowLimiter = new CognitoRateLimiter(Map.of(OperationCategory.USER_CREATION, 10.0));
+        for (int i = 0; i < 10; i++) {
+            slowLimiter.executeAsync(OperationCategory.USER_CREATION, () -> CompletableFuture.completedFuture("ok"));
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<String> result = slowLimiter.executeAsync(OperationCategory.USER_CREATION,
+                () -> CompletableFuture.completedFuture("delayed"));
+        long returnedAfterMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(returnedAfterMillis < 50, "executeAsync should not wait for the token on the calling thread");
+        assertFalse(result.isDone());
+        assertEquals("delayed", result.join());
+        assertEquals(1L, slowLimiter.getMetrics().get("USER_CREATION.queued"));
+    }
+
+    @Test
+    public void testExecuteAsync_whenWaitWouldBeTooLong_returnsFailedFuture() {
+        CognitoRateLimiter slowLimiter = new CognitoRateLimiter(Map.of(OperationCategory.USER_CREATION, 1.0));
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> last = null;
+
+        for (int i = 0; i < 7; i++) {
+            last = slowLimiter.executeAsync(OperationCategory.USER_CREATION, () -> {
+                calls.incrementAndGet();
+                return CompletableFuture.completedFuture("ok");
+            });
+        }
+
+        assertTrue(last.isCompletedExceptionally());
+        CompletionException failure = assertThrows(CompletionException.class, last::join);
+        assertTrue(failure.getCause() instanceof CognitoThrottledException);
+        assertTrue(((CognitoThrottledException) failure.getCause()).getRetryAfterSeconds() >= 1);
+        assertEquals(1L, slowLimiter.getMetrics().get("USER_CREATION.rejected"));
+        assertEquals(1, calls.get(), "Only the call with an available token runs right away");
+    }
+
+    @Test
+    public void testExecute_whenStillThrottledAfterMaxRetries_throwsCognitoThrottledExceptionAndCountsIt() {
+        LambdaLogger logger = mock(LambdaLogger.class);
+        InvocationMetrics metrics = InvocationMetrics.start("TestHandler", null);
+
+        CognitoThrottledException failure = assertThrows(CognitoThrottledException.class,
+                () -> rateLimiter.execute(OperationCategory.USER_RESOURCE_UPDATE, () -> {
+                    throw throttlingException();
+                }));
+        metrics.emit(logger);
+
+        assertTrue(failure.getCause() instanceof AwsServiceException);
+        assertTrue(failure.getRetryAfterSeconds() >= 1);
+        ArgumentCaptor<String> emf = ArgumentCaptor.forClass(String.class);
+        verify(logger).log(emf.capture());
+        JsonObject emfJson = JsonParser.parseString(emf.getValue()).getAsJsonObject();
+        assertEquals(CognitoRateLimiter.MAX_RETRIES + 1, emfJson.get(CognitoRateLimiter.THROTTLED).getAsInt());
+        assertEquals(CognitoRateLimiter.MAX_RETRIES, emfJson.get(CognitoRateLimiter.RETRIED).getAsInt());
+    }
+
+    private static AwsServiceException throttlingException() {
+        return AwsServiceException.builder()
+                .statusCode(429)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("TooManyRequestsException").build())
+                .build();
+    }
+}
@@ -0,0 +1,143 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.appdeveloperblog.aws.errorresponse.shared.Constants;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class GroupMembershipBatchTest {
+
+    private static final String USER_POOL_ID = "us-east-1_pool";
+
+    @Mock
+    CognitoUserService cognitoUserService;
+
+    @Test
+    public void testAddUsersToGroups_whenMoreMembershipsThanConcurrency_keepsAtMostMaxConcurrencyInFlight() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(cognitoUserService.addUserToGroupAsync(anyString(), anyString(), eq(USER_POOL_ID))).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return CompletableFuture.supplyAsync(() -> {
+                inFlight.decrementAndGet();
+                return addUserToGroupResult();
+            }, CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS));
+        });
+
+        JsonArray results = new GroupMembershipBatch(cognitoUserService, 2).addUsersToGroups(memberships(6), USER_POOL_ID);
+
+        assertEquals(6, results.size());
+        assertEquals(2, maxInFlight.get());
+        verify(cognitoUserService, times(6)).addUserToGroupAsync(anyString(), anyString(), eq(USER_POOL_ID));
+    }
+
+    @Test
+    public void testAddUsersToGroups_whenCallsCompleteOutOfOrder_returnsResultsInRequestOrder() {
+        when(cognitoUserService.addUserToGroupAsync(anyString(), anyString(), eq(USER_POOL_ID))).thenAnswer(invocation -> {
+            // The first membership completes last
+            long delay = "user0".equals(invocation.getArgument(1)) ? 50 : 0;
+            return CompletableFuture.supplyAsync(GroupMembershipBatchTest::addUserToGroupResult,
+                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+        });
+
+        JsonArray results = new GroupMembershipBatch(cognitoUserService, 3).addUsersToGroups(memberships(3), USER_POOL_ID);
+
+        for (int i = 0; i < 3; i++) {
+            JsonObject result = results.get(i).getAsJsonObject();
+            assertEquals(i, result.get("index").getAsInt());
+            assertEquals("user" + i, result.get("username").getAsString());
+            assertTrue(result.get(Constants.IS_SUCCESSFUL).getAsBoolean());
+        }
+    }
+
+    @Test
+    public void testAddUsersToGroups_whenSomeCallsFail_reportsFailuresPerMembership() {
+        AwsServiceException userNotFound = AwsServiceException.builder()
+                .statusCode(400)
+                .awsErrorDetails(AwsErrorDetails.builder()
+                        .errorCode("UserNotFoundException")
+                        .errorMessage("User does not exist.")
+                        .build())
+                .build();
+        when(cognitoUserService.addUserToGroupAsync(anyString(), eq("user0"), eq(USER_POOL_ID)))
+                .thenReturn(CompletableFuture.failedFuture(userNotFound));
+        when(cognitoUserService.addUserToGroupAsync(anyString(), eq("user1"), eq(USER_POOL_ID)))
+                .thenThrow(new IllegalStateException("Cognito request rate limit reached, try again later"));
+        when(cognitoUserService.addUserToGroupAsync(anyString(), eq("user2"), eq(USER_POOL_ID)))
+                .thenReturn(CompletableFuture.completedFuture(addUserToGroupResult()));
+
+        JsonArray results = new GroupMembershipBatch(cognitoUserService, 2).addUsersToGroups(memberships(3), USER_POOL_ID);
+
+        JsonObject notFound = results.get(0).getAsJsonObject();
+        assertFalse(notFound.get(Constants.IS_SUCCESSFUL).getAsBoolean());
+        assertEquals(400, notFound.get(Constants.STATUS_CODE).getAsInt());
+        assertEquals("User does not exist.", notFound.get("message").getAsString());
+
+        JsonObject rejected = results.get(1).getAsJsonObject();
+        assertFalse(rejected.get(Constants.IS_SUCCESSFUL).getAsBoolean());
+        assertEquals(500, rejected.get(Constants.STATUS_CODE).getAsInt());
+
+        assertTrue(results.get(2).getAsJsonObject().get(Constants.IS_SUCCESSFUL).getAsBoolean());
+    }
+
+    @Test
+    public void testAddUsersToGroups_whenMembershipMalformed_reportsItWithoutCallingCognito() {
+        when(cognitoUserService.addUserToGroupAsync("admins", "peacemaker", USER_POOL_ID))
+                .thenReturn(CompletableFuture.completedFuture(addUserToGroupResult()));
+        JsonArray memberships = JsonParser.parseString("[\"peacemaker\", {\"username\":\"peacemaker\"},"
+                + " {\"username\":\" \",\"groupName\":\"admins\"}, {\"username\":\"peacemaker\",\"groupName\":\"admins\"}]")
+                .getAsJsonArray();
+
+        JsonArray results = new GroupMembershipBatch(cognitoUserService, 2).addUsersToGroups(memberships, USER_POOL_ID);
+
+        assertEquals(4, results.size());
+        assertEquals("Membership is not a JSON object", results.get(0).getAsJsonObject().get("message").getAsString());
+        assertEquals("Missing required field: groupName", results.get(1).getAsJsonObject().get("message").getAsString());
+        assertEquals("Missing required field: username", results.get(2).getAsJsonObject().get("message").getAsString());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(400, results.get(i).getAsJsonObject().get(Constants.STATUS_CODE).getAsInt());
+        }
+        assertTrue(results.get(3).getAsJsonObject().get(Constants.IS_SUCCESSFUL).getAsBoolean());
+        verify(cognitoUserService, times(1)).addUserToGroupAsync(any(), any(), any());
+    }
+
+    @Test
+    public void testConstructor_whenMaxConcurrencyBelowOne_throwsIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new GroupMembershipBatch(cognitoUserService, 0));
+    }
+
+    private static JsonArray memberships(int count) {
+        JsonArray memberships = new JsonArray();
+        for (int i = 0; i < count; i++) {
+            JsonObject membership = new JsonObject();
+            membership.addProperty("username", "user" + i);
+            membership.addProperty("groupName", "group" + i);
+            memberships.add(membership);
+        }
+        return memberships;
+    }
+
+    private static JsonObject addUserToGroupResult() {
+        JsonObject addUserToGroupResult = new JsonObject();
+        addUserToGroupResult.addProperty(Constants.IS_SUCCESSFUL, true);
+        addUserToGroupResult.addProperty(Constants.STATUS_CODE, 200);
+        return addUserToGroupResult;
+    }
+}
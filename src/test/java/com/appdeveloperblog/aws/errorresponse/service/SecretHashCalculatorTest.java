@@ -0,0 +1,47 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SecretHashCalculatorTest {
+
+    @Test
+    public void testCalculate_whenCalledRepeatedly_returnsSameHashAsPlainHmac() throws Exception {
+        SecretHashCalculator secretHashCalculator = new SecretHashCalculator();
+
+        String expected = plainHmac("client-id", "client-secret", "peacemaker");
+
+        assertEquals(expected, secretHashCalculator.calculate("client-id", "client-secret", "peacemaker"));
+        assertEquals(expected, secretHashCalculator.calculate("client-id", "client-secret", "peacemaker"));
+    }
+
+    @Test
+    public void testCalculate_whenSecretsDiffer_usesMatchingKey() throws Exception {
+        SecretHashCalculator secretHashCalculator = new SecretHashCalculator();
+
+        assertEquals(plainHmac("client-id", "secret-a", "user"), secretHashCalculator.calculate("client-id", "secret-a", "user"));
+        assertEquals(plainHmac("client-id", "secret-b", "user"), secretHashCalculator.calculate("client-id", "secret-b", "user"));
+    }
+
+    @Test
+    public void testCalculate_whenUsernameExceedsBuffer_returnsSameHashAsPlainHmac() throws Exception {
+        SecretHashCalculator secretHashCalculator = new SecretHashCalculator(10);
+        String longUsername = "\u00fc".repeat(1000);
+
+        assertEquals(plainHmac("client-id", "client-secret", longUsername),
+                secretHashCalculator.calculate("client-id", "client-secret", longUsername));
+    }
+
+    private static String plainHmac(String clientId, String clientSecret, String userName) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(clientSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        mac.update(userName.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(mac.doFinal(clientId.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,90 @@
+package com.appdeveloperblog.aws.errorresponse.service;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserCacheTest {
+
+    UserCache userCache = new UserCache(100, Duration.ofMinutes(1));
+    AtomicInteger loads = new AtomicInteger();
+
+    Supplier<JsonObject> loader = () -> {
+        JsonObject userDetails = new JsonObject();
+        userDetails.addProperty("email", "peacemaker@peace.com");
+        userDetails.addProperty("load", loads.incrementAndGet());
+        return userDetails;
+    };
+
+    @Test
+    public void testGet_whenCalledTwice_loadsOnce() {
+        userCache.get("pool", "peacemaker", loader);
+        JsonObject userDetails = userCache.get("pool", "peacemaker", loader);
+
+        assertEquals(1, loads.get());
+        assertEquals(1, userDetails.get("load").getAsInt());
+        assertEquals(1L, userCache.getStats().get("hitCount"));
+    }
+
+    @Test
+    public void testGet_whenUserInvalidated_loadsAgain() {
+        userCache.get("pool", "peacemaker", loader);
+        userCache.get("pool", "smith", loader);
+
+        userCache.invalidate("peacemaker");
+
+        assertEquals(3, userCache.get("pool", "peacemaker", loader).get("load").getAsInt());
+        assertEquals(2, userCache.get("pool", "smith", loader).get("load").getAsInt());
+    }
+
+    @Test
+    public void testGet_whenCallerModifiesResult_cachedEntryIsUnchanged() {
+        userCache.get("pool", "peacemaker", loader).addProperty("email", "changed");
+
+        assertEquals("peacemaker@peace.com", userCache.get("pool", "peacemaker", loader).get("email").getAsString());
+    }
+
+    @Test
+    public void testGet_whenUserInvalidatedWhileLoading_doesNotCacheStaleUser() {
+        userCache.get("pool", "peacemaker", () -> {
+            JsonObject staleUser = loader.get();
+            // e.g. AdminAddUserToGroup completing while AdminGetUser is in flight
+            userCache.invalidate("peacemaker");
+            return staleUser;
+        });
+
+        assertEquals(2, userCache.get("pool", "peacemaker", loader).get("load").getAsInt());
+        assertEquals(2, userCache.get("pool", "peacemaker", loader).get("load").getAsInt());
+    }
+
+    @Test
+    public void testGetAsync_whenCalledTwice_loadsOnce() {
+        CompletableFuture<JsonObject> pendingLoad = new CompletableFuture<>();
+        CompletableFuture<JsonObject> first = userCache.getAsync("pool", "peacemaker", () -> pendingLoad);
+        pendingLoad.complete(loader.get());
+
+        JsonObject userDetails = userCache.getAsync("pool", "peacemaker",
+                () -> CompletableFuture.completedFuture(loader.get())).join();
+
+        assertEquals(1, first.join().get("load").getAsInt());
+        assertEquals(1, userDetails.get("load").getAsInt());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testGetAsync_whenUserInvalidatedBeforeLoadCompletes_doesNotCacheStaleUser() {
+        CompletableFuture<JsonObject> pendingLoad = new CompletableFuture<>();
+        CompletableFuture<JsonObject> first = userCache.getAsync("pool", "peacemaker", () -> pendingLoad);
+        userCache.invalidate("peacemaker");
+        pendingLoad.complete(loader.get());
+        first.join();
+
+        assertEquals(2, userCache.get("pool", "peacemaker", loader).get("load").getAsInt());
+    }
+}
@@ -0,0 +1,70 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuthorizerContextTest {
+
+    private static final Map<String, Object> AUTHORIZER = Map.of(
+            AuthorizerContext.SUB, "b3f1c1e0-sub",
+            AuthorizerContext.USERNAME, "peacemaker",
+            AuthorizerContext.EMAIL, "peacemaker@peace.com",
+            AuthorizerContext.GROUPS, "users",
+            "principalId", "b3f1c1e0-sub");
+
+    @Test
+    public void testGetUserAttributes_whenClaimsPropagated_returnsOnlyUserAttributes() {
+        JsonObject userAttributes = AuthorizerContext.getUserAttributes(AUTHORIZER);
+
+        assertEquals("b3f1c1e0-sub", userAttributes.get(AuthorizerContext.SUB).getAsString());
+        assertEquals("peacemaker@peace.com", userAttributes.get(AuthorizerContext.EMAIL).getAsString());
+        assertEquals(2, userAttributes.size(), "name and custom:userid are missing, groups is not an attribute");
+    }
+
+    @Test
+    public void testGetUserAttributes_whenNoSubPropagated_returnsNull() {
+        assertNull(AuthorizerContext.getUserAttributes(Map.of("principalId", "user")));
+        assertNull(AuthorizerContext.getUserAttributes(null));
+    }
+
+    @Test
+    public void testGetAuthorizer_whenNoRequestContext_returnsNull() {
+        assertNull(AuthorizerContext.getAuthorizer(new APIGatewayProxyRequestEvent()));
+        assertEquals("peacemaker", AuthorizerContext.getUsername(AuthorizerContext.getAuthorizer(
+                new APIGatewayProxyRequestEvent().withRequestContext(
+                        authorizedContext()))));
+    }
+
+    @Test
+    public void testIsAccessTokenOf_whenTokenSubjectMatches_returnsTrue() {
+        assertTrue(AuthorizerContext.isAccessTokenOf(AUTHORIZER, accessToken("b3f1c1e0-sub")));
+    }
+
+    @Test
+    public void testIsAccessTokenOf_whenTokenOfOtherUserOrUnreadable_returnsFalse() {
+        assertFalse(AuthorizerContext.isAccessTokenOf(AUTHORIZER, accessToken("other-sub")));
+        assertFalse(AuthorizerContext.isAccessTokenOf(AUTHORIZER, "not-a-jwt"));
+        assertFalse(AuthorizerContext.isAccessTokenOf(AUTHORIZER, null));
+        assertFalse(AuthorizerContext.isAccessTokenOf(null, accessToken("b3f1c1e0-sub")));
+    }
+
+    static String accessToken(String subject) {
+        return JWT.create()
+                .withSubject(subject)
+                .withClaim("token_use", "access")
+                .sign(Algorithm.HMAC256("secret"));
+    }
+
+    private static APIGatewayProxyRequestEvent.ProxyRequestContext authorizedContext() {
+        APIGatewayProxyRequestEvent.ProxyRequestContext requestContext = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        requestContext.setAuthorizer(AUTHORIZER);
+        return requestContext;
+    }
+}
@@ -0,0 +1,27 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EnvironmentVariablesTest {
+
+    @Test
+    public void testParseLong_whenValueIsPadded_returnsTrimmedValue() {
+        assertEquals(25L, EnvironmentVariables.parseLong("BULK_IMPORT_MAX_CONCURRENCY", " 25\n", 10));
+    }
+
+    @Test
+    public void testParseLong_whenValueIsMissingOrBlank_returnsDefault() {
+        assertEquals(10L, EnvironmentVariables.parseLong("BULK_IMPORT_MAX_CONCURRENCY", null, 10));
+        assertEquals(10L, EnvironmentVariables.parseLong("BULK_IMPORT_MAX_CONCURRENCY", "  ", 10));
+    }
+
+    @Test
+    public void testParseLong_whenValueIsNotANumber_throwsIllegalArgumentExceptionNamingTheVariable() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> EnvironmentVariables.parseLong("BULK_IMPORT_MAX_CONCURRENCY", "ten", 10));
+
+        assertTrue(exception.getMessage().startsWith("BULK_IMPORT_MAX_CONCURRENCY"));
+    }
+}
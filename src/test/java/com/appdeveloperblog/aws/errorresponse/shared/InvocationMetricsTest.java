@@ -0,0 +1,131 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class InvocationMetricsTest {
+
+    @AfterEach
+    public void stopRecording() {
+        InvocationMetrics.current().emit(mock(LambdaLogger.class));
+    }
+
+    @Test
+    public void testToEmf_whenStagesAndCountersRecorded_writesMetricDefinitionsMatchingValues() {
+        Context context = mock(Context.class);
+        when(context.getAwsRequestId()).thenReturn("request-1");
+        InvocationMetrics metrics = InvocationMetrics.start("TestHandler", context);
+        metrics.recordStage("Parse", System.nanoTime());
+        metrics.count("UserCache.Hit");
+        metrics.errorCode("NotAuthorizedException");
+
+        JsonObject emf = JsonParser.parseString(metrics.toEmf(1_700_000_000_000L)).getAsJsonObject();
+
+        JsonObject aws = emf.getAsJsonObject("_aws");
+        assertEquals(1_700_000_000_000L, aws.get("Timestamp").getAsLong());
+        JsonObject cloudWatchMetrics = aws.getAsJsonArray("CloudWatchMetrics").get(0).getAsJsonObject();
+        assertEquals("ErrorResponseExample", cloudWatchMetrics.get("Namespace").getAsString());
+        assertEquals("[[\"Handler\"]]", cloudWatchMetrics.getAsJsonArray("Dimensions").toString());
+
+        JsonArray definitions = cloudWatchMetrics.getAsJsonArray("Metrics");
+        assertEquals(5, definitions.size());
+        for (JsonElement definition : definitions) {
+            String name = definition.getAsJsonObject().get("Name").getAsString();
+            assertTrue(emf.has(name), "No value for metric " + name);
+            assertTrue(emf.get(name).getAsJsonPrimitive().isNumber());
+        }
+
+        assertEquals("TestHandler", emf.get("Handler").getAsString());
+        assertEquals("request-1", emf.get("RequestId").getAsString());
+        assertEquals("NotAuthorizedException", emf.get("ErrorCode").getAsString());
+        assertEquals(1, emf.get("Error").getAsInt());
+        assertEquals(1, emf.get("UserCache.Hit").getAsLong());
+    }
+
+    @Test
+    public void testRecordStage_whenStageRepeats_accumulatesIntoOneMetric() {
+        InvocationMetrics metrics = InvocationMetrics.start("TestHandler", null);
+        long twoMillisAgo = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(2);
+        metrics.recordStage("Cognito.GetUser", twoMillisAgo);
+        metrics.recordStage("Cognito.GetUser", twoMillisAgo);
+        metrics.count("UserCache.Miss");
+        metrics.count("UserCache.Miss");
+
+        JsonObject emf = JsonParser.parseString(metrics.toEmf(0)).getAsJsonObject();
+
+        assertTrue(emf.get("Cognito.GetUser").getAsDouble() >= 4.0);
+        assertEquals(2, emf.get("UserCache.Miss").getAsLong());
+        assertEquals(0, emf.get("Error").getAsInt());
+        assertFalse(emf.has("ErrorCode"));
+    }
+
+    @Test
+    public void testCount_whenMoreNamesThanMaxEntries_dropsTheExtraNames() {
+        InvocationMetrics metrics = InvocationMetrics.start("TestHandler", null);
+        for (int i = 0; i < InvocationMetrics.MAX_ENTRIES + 4; i++) {
+            metrics.count("Counter" + i);
+            metrics.recordStage("Stage" + i, System.nanoTime());
+        }
+
+        JsonObject emf = JsonParser.parseString(metrics.toEmf(0)).getAsJsonObject();
+
+        assertTrue(emf.has("Counter" + (InvocationMetrics.MAX_ENTRIES - 1)));
+        assertFalse(emf.has("Counter" + InvocationMetrics.MAX_ENTRIES));
+        assertTrue(emf.has("Stage" + (InvocationMetrics.MAX_ENTRIES - 1)));
+        assertFalse(emf.has("Stage" + InvocationMetrics.MAX_ENTRIES));
+        assertEquals(3 + 2 * InvocationMetrics.MAX_ENTRIES, emf.getAsJsonObject("_aws")
+                .getAsJsonArray("CloudWatchMetrics").get(0).getAsJsonObject().getAsJsonArray("Metrics").size());
+    }
+
+    @Test
+    public void testCount_whenRecordedFromOtherThreads_countsIntoTheCapturedInvocation() {
+        InvocationMetrics metrics = InvocationMetrics.start("TestHandler", null);
+
+        CompletableFuture<?>[] completions = new CompletableFuture<?>[8];
+        for (int i = 0; i < completions.length; i++) {
+            completions[i] = CompletableFuture.runAsync(() -> {
+                for (int j = 0; j < 1_000; j++) {
+                    metrics.count("Cognito.Call");
+                }
+                metrics.errorCode("TooManyRequestsException");
+            });
+        }
+        CompletableFuture.allOf(completions).join();
+
+        JsonObject emf = JsonParser.parseString(metrics.toEmf(0)).getAsJsonObject();
+
+        assertEquals(8_000, emf.get("Cognito.Call").getAsLong());
+        assertEquals("TooManyRequestsException", emf.get("ErrorCode").getAsString());
+    }
+
+    @Test
+    public void testCurrent_whenNoInvocationRecorded_isNoOp() {
+        LambdaLogger logger = mock(LambdaLogger.class);
+        InvocationMetrics metrics = InvocationMetrics.start("TestHandler", null);
+        assertSame(metrics, InvocationMetrics.current());
+        metrics.emit(logger);
+
+        InvocationMetrics outside = InvocationMetrics.current();
+        assertNotSame(metrics, outside);
+        outside.count("Outside");
+        outside.recordStage("Outside", System.nanoTime());
+        outside.errorCode("Outside");
+        outside.emit(logger);
+
+        verify(logger, times(1)).log(startsWith("{\"_aws\""));
+        JsonObject emf = JsonParser.parseString(InvocationMetrics.start("TestHandler", null).toEmf(0)).getAsJsonObject();
+        assertFalse(emf.has("Outside"));
+    }
+}
@@ -0,0 +1,51 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import com.appdeveloperblog.aws.errorresponse.ErrorResponse;
+import com.appdeveloperblog.aws.errorresponse.authorizer.AuthorizerOutput;
+import com.appdeveloperblog.aws.errorresponse.authorizer.PolicyDocument;
+import com.appdeveloperblog.aws.errorresponse.authorizer.Statement;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonCodecTest {
+
+    @Test
+    public void testToJson_whenAuthorizerOutputWritten_matchesReflectiveGsonOutput() {
+        AuthorizerOutput authorizerOutput = AuthorizerOutput.builder()
+                .principalId("peacemaker")
+                .policyDocument(PolicyDocument.builder()
+                        .version("2012-10-17")
+                        .statements(List.of(Statement.builder()
+                                .action("execute-api:Invoke")
+                                .effect("Allow")
+                                .resource("arn:aws:execute-api:us-east-1:123456789012:abcdef1234/Prod/GET/*")
+                                .build()))
+                        .build())
+                .context(Map.of(AuthorizerContext.USERNAME, "peacemaker"))
+                .build();
+
+        String json = JsonCodec.toJson(authorizerOutput);
+
+        assertEquals(new Gson().toJson(authorizerOutput), json);
+        AuthorizerOutput parsed = JsonCodec.parseAuthorizerOutput(json);
+        assertEquals("peacemaker", parsed.getPrincipalId());
+        assertEquals("Allow", parsed.getPolicyDocument().Statement.get(0).Effect);
+        assertEquals("peacemaker", parsed.getContext().get(AuthorizerContext.USERNAME));
+    }
+
+    @Test
+    public void testToJson_whenErrorMessageIsNull_writesNullMessage() {
+        ErrorResponse errorResponse = new ErrorResponse(null);
+
+        String json = JsonCodec.toJson(errorResponse);
+
+        assertEquals("{\"message\":null}", json);
+        assertEquals(new GsonBuilder().serializeNulls().create().toJson(errorResponse), json);
+    }
+}
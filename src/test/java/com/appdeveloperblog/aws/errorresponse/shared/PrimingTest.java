@@ -0,0 +1,69 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import com.appdeveloperblog.aws.errorresponse.service.AccessTokenUserCache;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoLatencyRecorder;
+import com.appdeveloperblog.aws.errorresponse.service.CognitoRateLimiter;
+import com.appdeveloperblog.aws.errorresponse.service.UserCache;
+import com.appdeveloperblog.aws.errorresponse.utils.JwtUtils;
+import com.auth0.jwt.JWT;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpFullRequest;
+import software.amazon.awssdk.http.SdkHttpMethod;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrimingTest {
+
+    @Test
+    public void testPrime_whenRun_leavesSharedStateUntouched() throws Exception {
+        Map<String, Number> userCacheStats = UserCache.shared().getStats();
+        Map<String, Number> accessTokenCacheStats = AccessTokenUserCache.shared().getStats();
+        Map<String, Number> rateLimiterMetrics = CognitoRateLimiter.shared().getMetrics();
+        int latencyEntries = CognitoLatencyRecorder.shared().snapshot().getEntries().size();
+
+        Priming.prime();
+
+        assertEquals(userCacheStats, UserCache.shared().getStats());
+        assertEquals(accessTokenCacheStats, AccessTokenUserCache.shared().getStats());
+        assertEquals(rateLimiterMetrics, CognitoRateLimiter.shared().getMetrics());
+        assertEquals(latencyEntries, CognitoLatencyRecorder.shared().snapshot().getEntries().size());
+    }
+
+    @Test
+    public void testPrimeJwtVerification_whenRun_returnsIdTokenOfPrimingPool() throws Exception {
+        String idToken = Priming.primeJwtVerification(Priming.generateKeyPair());
+
+        assertEquals(Priming.KEY_ID, JWT.decode(idToken).getKeyId());
+        assertEquals(JwtUtils.TOKEN_USE_ID, JWT.decode(idToken).getClaim("token_use").asString());
+    }
+
+    @Test
+    public void testPrimingHttpClient_whenOperationCalled_answersWithoutNetwork() throws IOException {
+        PrimingHttpClient httpClient = new PrimingHttpClient(Map.of("GetUser", "{\"Username\":\"priming\"}"));
+
+        assertEquals("{\"Username\":\"priming\"}", call(httpClient, "AWSCognitoIdentityProviderService.GetUser"));
+        assertEquals("{}", call(httpClient, "AWSCognitoIdentityProviderService.SignUp"));
+    }
+
+    private static String call(PrimingHttpClient httpClient, String target) throws IOException {
+        SdkHttpFullRequest request = SdkHttpFullRequest.builder()
+                .method(SdkHttpMethod.POST)
+                .uri(URI.create("http://127.0.0.1"))
+                .putHeader("X-Amz-Target", target)
+                .build();
+
+        HttpExecuteResponse response = httpClient.prepareRequest(HttpExecuteRequest.builder()
+                .request(request)
+                .build()).call();
+
+        assertEquals(200, response.httpResponse().statusCode());
+        return new String(response.responseBody().orElseThrow().readAllBytes(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,44 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SecretsLoaderTest {
+
+    Map<String, String> environment = Map.of(
+            "MY_COGNITO_POOL_APP_CLIENT_ID", "encrypted-client-id",
+            "MY_COGNITO_POOL_APP_CLIENT_SECRET", "encrypted-client-secret");
+
+    AtomicInteger decryptCalls = new AtomicInteger();
+
+    SecretsLoader secretsLoader = new SecretsLoader(ciphertext -> {
+        decryptCalls.incrementAndGet();
+        return ciphertext.replace("encrypted-", "");
+    }, environment::get);
+
+    @Test
+    public void testGetAll_whenVariablesAreSet_returnsDecryptedValues() {
+        Map<String, String> secrets = secretsLoader.getAll("MY_COGNITO_POOL_APP_CLIENT_ID",
+                "MY_COGNITO_POOL_APP_CLIENT_SECRET");
+
+        assertEquals("client-id", secrets.get("MY_COGNITO_POOL_APP_CLIENT_ID"));
+        assertEquals("client-secret", secrets.get("MY_COGNITO_POOL_APP_CLIENT_SECRET"));
+    }
+
+    @Test
+    public void testGet_whenCalledRepeatedly_decryptsOnce() {
+        secretsLoader.get("MY_COGNITO_POOL_APP_CLIENT_ID");
+        secretsLoader.get("MY_COGNITO_POOL_APP_CLIENT_ID");
+
+        assertEquals(1, decryptCalls.get());
+    }
+
+    @Test
+    public void testGet_whenVariableIsMissing_throwsIllegalStateException() {
+        assertThrows(IllegalStateException.class, () -> secretsLoader.get("MY_COGNITO_USER_POOL_ID"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.appdeveloperblog.aws.errorresponse.shared;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger.Level;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.appdeveloperblog.aws.errorresponse.shared.StructuredLogger.lazy;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StructuredLoggerTest {
+
+    @Mock
+    LambdaLogger logger;
+
+    @Test
+    public void testDebug_whenLevelIsInfo_doesNotComputeOrLog() {
+        StructuredLogger log = new StructuredLogger(logger, "Test", "request-1", Level.INFO, false);
+        AtomicBoolean computed = new AtomicBoolean();
+
+        log.debug("Expensive", "value", lazy(() -> {
+            computed.set(true);
+            return "value";
+        }));
+
+        assertFalse(computed.get());
+        verifyNoInteractions(logger);
+    }
+
+    @Test
+    public void testInfo_whenSensitiveFieldsLogged_redactsThem() {
+        StructuredLogger log = new StructuredLogger(logger, "Test", "request-1", Level.INFO, false);
+        JsonObject body = new JsonObject();
+        body.addProperty("username", "peacemaker");
+        body.addProperty("password", "baldyeagle");
+        body.addProperty("code", "123456");
+
+        log.info("Login", "body", body, "Authorization", "eyJraWQ", "attempt", 2);
+
+        ArgumentCaptor<String> line = ArgumentCaptor.forClass(String.class);
+        verify(logger).log(line.capture());
+        JsonObject json = JsonParser.parseString(line.getValue()).getAsJsonObject();
+        assertEquals("INFO", json.get("level").getAsString());
+        assertEquals("request-1", json.get("requestId").getAsString());
+        assertEquals("peacemaker", json.getAsJsonObject("body").get("username").getAsString());
+        assertEquals(StructuredLogger.REDACTED, json.getAsJsonObject("body").get("password").getAsString());
+        assertEquals(StructuredLogger.REDACTED, json.getAsJsonObject("body").get("code").getAsString());
+        assertEquals(StructuredLogger.REDACTED, json.get("Authorization").getAsString());
+        assertEquals(2, json.get("attempt").getAsInt());
+        assertFalse(line.getValue().contains("baldyeagle"));
+    }
+
+    @Test
+    public void testDebug_whenRequestIsSampled_logsAtDebug() {
+        StructuredLogger log = new StructuredLogger(logger, "Test", null, Level.ERROR, true);
+
+        log.debug("Sampled detail");
+
+        ArgumentCaptor<String> line = ArgumentCaptor.forClass(String.class);
+        verify(logger).log(line.capture());
+        assertTrue(JsonParser.parseString(line.getValue()).getAsJsonObject().get("sampled").getAsBoolean());
+    }
+
+    @Test
+    public void testParseSampleRate_whenValueInvalidOrOutOfRange_fallsBackOrClamps() {
+        assertEquals(0.25, StructuredLogger.parseSampleRate(" 0.25 "));
+        assertEquals(0, StructuredLogger.parseSampleRate(null));
+        assertEquals(0, StructuredLogger.parseSampleRate("ten percent"));
+        assertEquals(0, StructuredLogger.parseSampleRate("NaN"));
+        assertEquals(0, StructuredLogger.parseSampleRate("-0.5"));
+        assertEquals(1, StructuredLogger.parseSampleRate("5"));
+    }
+}
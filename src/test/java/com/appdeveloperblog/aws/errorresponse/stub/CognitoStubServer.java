@@ -0,0 +1,374 @@
+package com.appdeveloperblog.aws.errorresponse.stub;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTDecodeException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for the Cognito Identity Provider service, speaking its JSON 1.1 protocol on the loopback
+ * interface.
+ * <p>
+ * SignUp, ConfirmSignUp, InitiateAuth, GetUser, AdminGetUser and AdminAddUserToGroup are implemented on top of an
+ * in-memory user store, so an SDK client built with {@code endpointOverride(server.getEndpoint())} runs the real
+ * marshalling and HTTP path without network access. Latency and errors can be injected to see how callers behave
+ * when Cognito is slow or throttles.
+ */
+public class CognitoStubServer implements AutoCloseable {
+
+    public static final String TARGET_PREFIX = "AWSCognitoIdentityProviderService.";
+    public static final String CONFIRMATION_CODE = "123456";
+
+    private static final Algorithm TOKEN_ALGORITHM = Algorithm.HMAC256("cognito-stub");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, StubUser> users = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+
+    private volatile long latencyMillis;
+    private volatile long latencyJitterMillis;
+    private volatile double errorRate;
+    private volatile String errorType = "TooManyRequestsException";
+    private volatile int errorStatusCode = 400;
+
+    private CognitoStubServer(int threads) throws IOException {
+        executor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public static CognitoStubServer start() throws IOException {
+        return start(64);
+    }
+
+    public static CognitoStubServer start(int threads) throws IOException {
+        return new CognitoStubServer(threads);
+    }
+
+    public URI getEndpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    /**
+     * Delays every response by {@code latencyMillis} plus a uniformly distributed jitter of up to {@code jitterMillis}.
+     */
+    public CognitoStubServer withLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * Fails the given fraction of requests with the given error type, e.g. TooManyRequestsException and 400
+     * or InternalErrorException and 500.
+     */
+    public CognitoStubServer withErrors(double errorRate, String errorType, int statusCode) {
+        this.errorRate = errorRate;
+        this.errorType = errorType;
+        this.errorStatusCode = statusCode;
+        return this;
+    }
+
+    public void putUser(String username, String password, Map<String, String> attributes, boolean confirmed) {
+        users.put(username, new StubUser(password, attributes, confirmed));
+    }
+
+    public boolean isConfirmed(String username) {
+        StubUser user = findUser(username);
+        return user != null && user.confirmed;
+    }
+
+    public Set<String> getGroups(String username) {
+        StubUser user = findUser(username);
+        return user == null ? Set.of() : Set.copyOf(user.groups);
+    }
+
+    /**
+     * An access token GetUser accepts for the given user, as InitiateAuth would return it.
+     */
+    public String accessTokenFor(String username) {
+        return mintToken(username, "access");
+    }
+
+    public long getRequestCount(String operation) {
+        LongAdder count = requestCounts.get(operation);
+        return count == null ? 0 : count.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            String operation = target != null && target.startsWith(TARGET_PREFIX)
+                    ? target.substring(TARGET_PREFIX.length())
+                    : String.valueOf(target);
+            requestCounts.computeIfAbsent(operation, key -> new LongAdder()).increment();
+
+            JsonObject request;
+            try (InputStreamReader body = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                JsonElement parsed = JsonParser.parseReader(body);
+                request = parsed.isJsonObject() ? parsed.getAsJsonObject() : new JsonObject();
+            }
+
+            delay();
+
+            StubResponse response;
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                response = error(errorStatusCode, errorType, "Injected by CognitoStubServer");
+            } else {
+                response = dispatch(operation, request);
+            }
+
+            byte[] body = response.body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/x-amz-json-1.1");
+            exchange.getResponseHeaders().set("x-amzn-RequestId", UUID.randomUUID().toString());
+            exchange.sendResponseHeaders(response.statusCode, body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        }
+    }
+
+    private StubResponse dispatch(String operation, JsonObject request) {
+        switch (operation) {
+            case "SignUp":
+                return signUp(request);
+            case "ConfirmSignUp":
+                return confirmSignUp(request);
+            case "InitiateAuth":
+                return initiateAuth(request);
+            case "GetUser":
+                return getUser(request);
+            case "AdminGetUser":
+                return adminGetUser(request);
+            case "AdminAddUserToGroup":
+                return adminAddUserToGroup(request);
+            default:
+                return error(400, "UnknownOperationException", "Operation not supported by the stub: " + operation);
+        }
+    }
+
+    private StubResponse signUp(JsonObject request) {
+        String username = getString(request, "Username");
+        if (username == null) {
+            return error(400, "InvalidParameterException", "Username is required.");
+        }
+
+        Map<String, String> attributes = new ConcurrentHashMap<>();
+        JsonElement userAttributes = request.get("UserAttributes");
+        if (userAttributes != null && userAttributes.isJsonArray()) {
+            for (JsonElement attribute : userAttributes.getAsJsonArray()) {
+                String name = getString(attribute.getAsJsonObject(), "Name");
+                String value = getString(attribute.getAsJsonObject(), "Value");
+                if (name != null && value != null) {
+                    attributes.put(name, value);
+                }
+            }
+        }
+
+        String sub = UUID.randomUUID().toString();
+        attributes.put("sub", sub);
+        if (users.putIfAbsent(username, new StubUser(getString(request, "Password"), attributes, false)) != null) {
+            return error(400, "UsernameExistsException", "User already exists");
+        }
+
+        JsonObject response = new JsonObject();
+        response.addProperty("UserConfirmed", false);
+        response.addProperty("UserSub", sub);
+        return ok(response);
+    }
+
+    private StubResponse confirmSignUp(JsonObject request) {
+        StubUser user = findUser(getString(request, "Username"));
+        if (user == null) {
+            return error(400, "UserNotFoundException", "Username/client id combination not found.");
+        }
+        if (!CONFIRMATION_CODE.equals(getString(request, "ConfirmationCode"))) {
+            return error(400, "CodeMismatchException", "Invalid verification code provided, please try again.");
+        }
+        user.confirmed = true;
+        return ok(new JsonObject());
+    }
+
+    private StubResponse initiateAuth(JsonObject request) {
+        JsonObject authParameters = request.has("AuthParameters")
+                ? request.getAsJsonObject("AuthParameters")
+                : new JsonObject();
+        String username = getString(authParameters, "USERNAME");
+        StubUser user = findUser(username);
+        if (user == null) {
+            return error(400, "UserNotFoundException", "User does not exist.");
+        }
+        if (!Objects.equals(user.password, getString(authParameters, "PASSWORD"))) {
+            return error(400, "NotAuthorizedException", "Incorrect username or password.");
+        }
+        if (!user.confirmed) {
+            return error(400, "UserNotConfirmedException", "User is not confirmed.");
+        }
+
+        JsonObject authenticationResult = new JsonObject();
+        authenticationResult.addProperty("AccessToken", mintToken(username, "access"));
+        authenticationResult.addProperty("ExpiresIn", 3600);
+        authenticationResult.addProperty("IdToken", mintToken(username, "id"));
+        authenticationResult.addProperty("RefreshToken", UUID.randomUUID().toString());
+        authenticationResult.addProperty("TokenType", "Bearer");
+
+        JsonObject response = new JsonObject();
+        response.add("AuthenticationResult", authenticationResult);
+        response.add("ChallengeParameters", new JsonObject());
+        return ok(response);
+    }
+
+    private StubResponse getUser(JsonObject request) {
+        String username;
+        try {
+            username = JWT.decode(getString(request, "AccessToken")).getClaim("username").asString();
+        } catch (JWTDecodeException | NullPointerException e) {
+            return error(400, "NotAuthorizedException", "Invalid Access Token");
+        }
+        StubUser user = findUser(username);
+        if (user == null) {
+            return error(400, "NotAuthorizedException", "Invalid Access Token");
+        }
+        return ok(toUser(username, user));
+    }
+
+    private StubResponse adminGetUser(JsonObject request) {
+        String username = getString(request, "Username");
+        StubUser user = findUser(username);
+        if (user == null) {
+            return error(400, "UserNotFoundException", "User does not exist.");
+        }
+
+        JsonObject response = toUser(username, user);
+        response.addProperty("Enabled", true);
+        response.addProperty("UserStatus", user.confirmed ? "CONFIRMED" : "UNCONFIRMED");
+        return ok(response);
+    }
+
+    private StubResponse adminAddUserToGroup(JsonObject request) {
+        StubUser user = findUser(getString(request, "Username"));
+        String groupName = getString(request, "GroupName");
+        if (user == null) {
+            return error(400, "UserNotFoundException", "User does not exist.");
+        }
+        if (groupName == null) {
+            return error(400, "InvalidParameterException", "GroupName is required.");
+        }
+        user.groups.add(groupName);
+        return ok(new JsonObject());
+    }
+
+    private StubUser findUser(String username) {
+        return username == null ? null : users.get(username);
+    }
+
+    private void delay() {
+        long millis = latencyMillis
+                + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0);
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static JsonObject toUser(String username, StubUser user) {
+        JsonArray userAttributes = new JsonArray();
+        user.attributes.forEach((name, value) -> {
+            JsonObject attribute = new JsonObject();
+            attribute.addProperty("Name", name);
+            attribute.addProperty("Value", value);
+            userAttributes.add(attribute);
+        });
+
+        JsonObject response = new JsonObject();
+        response.addProperty("Username", username);
+        response.add("UserAttributes", userAttributes);
+        return response;
+    }
+
+    private static String mintToken(String username, String tokenUse) {
+        return JWT.create()
+                .withSubject(UUID.nameUUIDFromBytes(username.getBytes(StandardCharsets.UTF_8)).toString())
+                .withClaim("username", username)
+                .withClaim("cognito:username", username)
+                .withClaim("token_use", tokenUse)
+                .withExpiresAt(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                .sign(TOKEN_ALGORITHM);
+    }
+
+    private static String getString(JsonObject object, String member) {
+        JsonElement value = object.get(member);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
+    private static StubResponse ok(JsonObject body) {
+        return new StubResponse(200, body);
+    }
+
+    private static StubResponse error(int statusCode, String type, String message) {
+        JsonObject body = new JsonObject();
+        body.addProperty("__type", type);
+        body.addProperty("message", message);
+        return new StubResponse(statusCode, body);
+    }
+
+    private static final class StubResponse {
+        private final int statusCode;
+        private final JsonObject body;
+
+        private StubResponse(int statusCode, JsonObject body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+    }
+
+    private static final class StubUser {
+        private final String password;
+        private final Map<String, String> attributes;
+        private final Set<String> groups = ConcurrentHashMap.newKeySet();
+        private volatile boolean confirmed;
+
+        private StubUser(String password, Map<String, String> attributes, boolean confirmed) {
+            this.password = password;
+            this.attributes = new ConcurrentHashMap<>(attributes);
+            this.confirmed = confirmed;
+        }
+    }
+}
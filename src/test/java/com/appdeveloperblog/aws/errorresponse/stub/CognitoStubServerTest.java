@@ -0,0 +1,115 @@
+package com.appdeveloperblog.aws.errorresponse.stub;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CognitoStubServerTest {
+
+    private CognitoStubServer stub;
+
+    @BeforeEach
+    public void startStub() throws IOException {
+        stub = CognitoStubServer.start(4);
+    }
+
+    @AfterEach
+    public void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    public void testSignUpConfirmAndLogin_whenCalledInOrder_returnsTokensForUser() throws IOException {
+        Response signUp = call("SignUp", "{\"ClientId\":\"client\",\"Username\":\"peacemaker\",\"Password\":\"baldyeagle\","
+                + "\"UserAttributes\":[{\"Name\":\"email\",\"Value\":\"peacemaker@peace.com\"}]}");
+        assertEquals(200, signUp.statusCode);
+        assertFalse(signUp.body.get("UserConfirmed").getAsBoolean());
+        assertNotNull(signUp.body.get("UserSub").getAsString());
+
+        Response confirm = call("ConfirmSignUp", "{\"ClientId\":\"client\",\"Username\":\"peacemaker\",\"ConfirmationCode\":\""
+                + CognitoStubServer.CONFIRMATION_CODE + "\"}");
+        assertEquals(200, confirm.statusCode);
+        assertTrue(stub.isConfirmed("peacemaker"));
+
+        Response login = call("InitiateAuth", "{\"AuthFlow\":\"USER_PASSWORD_AUTH\",\"ClientId\":\"client\","
+                + "\"AuthParameters\":{\"USERNAME\":\"peacemaker\",\"PASSWORD\":\"baldyeagle\"}}");
+        assertEquals(200, login.statusCode);
+        String accessToken = login.body.getAsJsonObject("AuthenticationResult").get("AccessToken").getAsString();
+
+        Response getUser = call("GetUser", "{\"AccessToken\":\"" + accessToken + "\"}");
+        assertEquals(200, getUser.statusCode);
+        assertEquals("peacemaker", getUser.body.get("Username").getAsString());
+        assertEquals(2, getUser.body.getAsJsonArray("UserAttributes").size(), "email and sub expected");
+    }
+
+    @Test
+    public void testSignUp_whenUsernameExists_returnsUsernameExistsException() throws IOException {
+        stub.putUser("peacemaker", "baldyeagle", Map.of(), true);
+
+        Response signUp = call("SignUp", "{\"Username\":\"peacemaker\",\"Password\":\"baldyeagle\"}");
+
+        assertEquals(400, signUp.statusCode);
+        assertEquals("UsernameExistsException", signUp.body.get("__type").getAsString());
+    }
+
+    @Test
+    public void testAdminAddUserToGroup_whenUserExists_addsGroup() throws IOException {
+        stub.putUser("peacemaker", "baldyeagle", Map.of(), true);
+
+        Response response = call("AdminAddUserToGroup",
+                "{\"GroupName\":\"admins\",\"Username\":\"peacemaker\",\"UserPoolId\":\"pool\"}");
+
+        assertEquals(200, response.statusCode);
+        assertEquals(1, stub.getRequestCount("AdminAddUserToGroup"));
+        assertTrue(stub.getGroups("peacemaker").contains("admins"));
+    }
+
+    @Test
+    public void testAnyOperation_whenErrorsInjected_returnsInjectedError() throws IOException {
+        stub.putUser("peacemaker", "baldyeagle", Map.of(), true);
+        stub.withErrors(1.0, "TooManyRequestsException", 400);
+
+        Response response = call("AdminGetUser", "{\"Username\":\"peacemaker\",\"UserPoolId\":\"pool\"}");
+
+        assertEquals(400, response.statusCode);
+        assertEquals("TooManyRequestsException", response.body.get("__type").getAsString());
+    }
+
+    private Response call(String operation, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) stub.getEndpoint().toURL().openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/x-amz-json-1.1");
+        connection.setRequestProperty("X-Amz-Target", CognitoStubServer.TARGET_PREFIX + operation);
+        try (OutputStream requestBody = connection.getOutputStream()) {
+            requestBody.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        int statusCode = connection.getResponseCode();
+        try (InputStream responseBody = statusCode < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            String json = new String(responseBody.readAllBytes(), StandardCharsets.UTF_8);
+            return new Response(statusCode, JsonParser.parseString(json).getAsJsonObject());
+        }
+    }
+
+    private static final class Response {
+        private final int statusCode;
+        private final JsonObject body;
+
+        private Response(int statusCode, JsonObject body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.appdeveloperblog.aws.errorresponse.stub;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves a user pool's jwks.json on the loopback interface, the way Cognito publishes it at
+ * {@code <base URL>/<user pool id>/.well-known/jwks.json}. Point the authorizer at {@link #getBaseUrl()}
+ * (COGNITO_JWKS_BASE_URL or the JwtUtils constructor) and mint tokens with {@link TokenFactory}.
+ * <p>
+ * {@link #rotateKey()} publishes a new signing key next to the existing ones, like Cognito does during key rotation.
+ */
+public class JwksStubServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LongAdder fetchCount = new LongAdder();
+
+    // kid -> key pair, in publishing order; the last one signs new tokens
+    private final Map<String, KeyPair> keyPairs = new LinkedHashMap<>();
+    private volatile String currentKeyId;
+
+    private JwksStubServer() throws IOException {
+        rotateKey();
+        executor = Executors.newFixedThreadPool(4);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public static JwksStubServer start() throws IOException {
+        return new JwksStubServer();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Publishes a new key and makes it the signing key.
+     *
+     * @return the kid of the new key
+     */
+    public synchronized String rotateKey() {
+        KeyPair keyPair = generateKeyPair();
+        String keyId = UUID.randomUUID().toString();
+        keyPairs.put(keyId, keyPair);
+        currentKeyId = keyId;
+        return keyId;
+    }
+
+    public String getCurrentKeyId() {
+        return currentKeyId;
+    }
+
+    public synchronized KeyPair getKeyPair(String keyId) {
+        return keyPairs.get(keyId);
+    }
+
+    public long getFetchCount() {
+        return fetchCount.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestURI().getPath().endsWith("/.well-known/jwks.json")) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            fetchCount.increment();
+
+            byte[] body = toJwks().toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        }
+    }
+
+    private synchronized JsonObject toJwks() {
+        JsonArray keys = new JsonArray();
+        keyPairs.forEach((keyId, keyPair) -> {
+            RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+            JsonObject key = new JsonObject();
+            key.addProperty("alg", "RS256");
+            key.addProperty("e", toBase64Url(publicKey.getPublicExponent()));
+            key.addProperty("kid", keyId);
+            key.addProperty("kty", "RSA");
+            key.addProperty("n", toBase64Url(publicKey.getModulus()));
+            key.addProperty("use", "sig");
+            keys.add(key);
+        });
+
+        JsonObject jwks = new JsonObject();
+        jwks.add("keys", keys);
+        return jwks;
+    }
+
+    // JWK encodes the unsigned big-endian value, so the sign byte BigInteger may add is dropped
+    private static String toBase64Url(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
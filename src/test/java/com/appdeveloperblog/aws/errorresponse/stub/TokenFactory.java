@@ -0,0 +1,77 @@
+package com.appdeveloperblog.aws.errorresponse.stub;
+
+import com.appdeveloperblog.aws.errorresponse.utils.JwtUtils;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTCreator;
+import com.auth0.jwt.algorithms.Algorithm;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mints Cognito-shaped RS256 ID tokens signed with the keys of a {@link JwksStubServer}.
+ * <p>
+ * Besides valid tokens it mints the kinds of tokens an authorizer sees in practice: expired ones, ones issued
+ * for another app client, and ones signed with a key that was rotated in after the authorizer loaded jwks.json.
+ */
+public class TokenFactory {
+
+    private final JwksStubServer keyServer;
+    private final String region;
+    private final String userPoolId;
+    private final String audience;
+
+    public TokenFactory(JwksStubServer keyServer, String region, String userPoolId, String audience) {
+        this.keyServer = keyServer;
+        this.region = region;
+        this.userPoolId = userPoolId;
+        this.audience = audience;
+    }
+
+    public String valid(String username) {
+        return sign(claims(username, audience, TimeUnit.HOURS.toMillis(1)), keyServer.getCurrentKeyId());
+    }
+
+    public String expired(String username) {
+        return sign(claims(username, audience, -TimeUnit.MINUTES.toMillis(5)), keyServer.getCurrentKeyId());
+    }
+
+    public String wrongAudience(String username) {
+        return sign(claims(username, "another-app-client", TimeUnit.HOURS.toMillis(1)), keyServer.getCurrentKeyId());
+    }
+
+    /**
+     * Publishes a new key on the key server and signs with it. The authorizer only accepts the token once it has
+     * refetched jwks.json, which JwksKeyStore allows at most once per {@code MIN_REFETCH_INTERVAL}.
+     */
+    public String rotatedKid(String username) {
+        return sign(claims(username, audience, TimeUnit.HOURS.toMillis(1)), keyServer.rotateKey());
+    }
+
+    private JWTCreator.Builder claims(String username, String audience, long expiresInMillis) {
+        long now = System.currentTimeMillis();
+        return JWT.create()
+                .withIssuer("https://cognito-idp." + region + ".amazonaws.com/" + userPoolId)
+                .withSubject(UUID.nameUUIDFromBytes(username.getBytes(StandardCharsets.UTF_8)).toString())
+                .withAudience(audience)
+                .withClaim("token_use", JwtUtils.TOKEN_USE_ID)
+                .withClaim("cognito:username", username)
+                .withClaim("email", username + "@example.com")
+                .withClaim("cognito:groups", List.of("users"))
+                .withIssuedAt(new Date(Math.min(now, now + expiresInMillis) - TimeUnit.MINUTES.toMillis(1)))
+                .withExpiresAt(new Date(now + expiresInMillis));
+    }
+
+    private String sign(JWTCreator.Builder claims, String keyId) {
+        KeyPair keyPair = keyServer.getKeyPair(keyId);
+        return claims
+                .withKeyId(keyId)
+                .sign(Algorithm.RSA256((RSAPublicKey) keyPair.getPublic(), (RSAPrivateKey) keyPair.getPrivate()));
+    }
+}
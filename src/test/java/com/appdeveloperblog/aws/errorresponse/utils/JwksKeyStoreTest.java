@@ -0,0 +1,118 @@
+package com.appdeveloperblog.aws.errorresponse.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JwksKeyStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    RSAPublicKey publicKey;
+    URL keySetUrl;
+
+    @BeforeEach
+    public void runBeforeEachTestMethod() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        publicKey = (RSAPublicKey) keyPairGenerator.generateKeyPair().getPublic();
+
+        String jwks = String.format("{\"keys\":[{\"kid\":\"key-1\",\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\"," +
+                        "\"n\":\"%s\",\"e\":\"%s\"}]}",
+                base64Url(publicKey.getModulus()),
+                base64Url(publicKey.getPublicExponent()));
+
+        Path jwksFile = tempDir.resolve("jwks.json");
+        Files.write(jwksFile, jwks.getBytes(StandardCharsets.UTF_8));
+        keySetUrl = jwksFile.toUri().toURL();
+    }
+
+    @AfterEach
+    public void runAfterEachTestMethod() {
+        JwksKeyStore.clear();
+    }
+
+    @Test
+    public void testGetPublicKey_whenKidIsPublished_returnsKeyFromJwks() {
+        RSAPublicKey key = JwksKeyStore.forUrl(keySetUrl).getPublicKey("key-1");
+
+        assertEquals(publicKey.getModulus(), key.getModulus());
+        assertEquals(publicKey.getPublicExponent(), key.getPublicExponent());
+    }
+
+    @Test
+    public void testForUrl_whenCalledTwice_returnsSharedStore() {
+        assertSame(JwksKeyStore.forUrl(keySetUrl), JwksKeyStore.forUrl(keySetUrl));
+    }
+
+    @Test
+    public void testGetPublicKey_whenKidIsUnknown_throwsRuntimeException() {
+        JwksKeyStore keyStore = JwksKeyStore.forUrl(keySetUrl);
+
+        assertThrows(RuntimeException.class, () -> keyStore.getPublicKey("unknown-kid"));
+    }
+
+    @Test
+    public void testGetPublicKey_whenStoreIsSeeded_doesNotFetchJwks() throws Exception {
+        URL missingUrl = tempDir.resolve("missing.json").toUri().toURL();
+        JwksKeyStore.seed(missingUrl, Map.of("seeded", publicKey));
+
+        assertSame(publicKey, JwksKeyStore.forUrl(missingUrl).getPublicKey("seeded"));
+    }
+
+    @Test
+    public void testGetPublicKey_whenJwksEndpointNeverAnswers_failsAfterReadTimeout() throws Exception {
+        // The connection is queued by the OS but never accepted, so no response ever arrives
+        try (ServerSocket silentServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            JwksKeyStore store = JwksKeyStore.forUrl(
+                    new URL("http://127.0.0.1:" + silentServer.getLocalPort() + "/jwks.json"));
+
+            long start = System.nanoTime();
+            assertThrows(RuntimeException.class, () -> store.getPublicKey("key-1"));
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertTrue(elapsedMillis < JwksKeyStore.CONNECT_TIMEOUT.plus(JwksKeyStore.READ_TIMEOUT).toMillis() + 1_000,
+                    "Fetch took " + elapsedMillis + " ms");
+        }
+    }
+
+    @Test
+    public void testGetPublicKey_whenInitialLoadFailed_doesNotFetchAgainWithinMinRefetchInterval() throws Exception {
+        URL laterUrl = tempDir.resolve("later.json").toUri().toURL();
+        JwksKeyStore keyStore = JwksKeyStore.forUrl(laterUrl);
+
+        assertThrows(RuntimeException.class, () -> keyStore.getPublicKey("key-1"));
+
+        // Published now, but the failed load is too recent to fetch again
+        Files.copy(tempDir.resolve("jwks.json"), tempDir.resolve("later.json"));
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> keyStore.getPublicKey("key-1"));
+        assertTrue(exception.getMessage().startsWith("No current keys"));
+    }
+
+    private static String base64Url(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            byte[] unsigned = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, unsigned, 0, unsigned.length);
+            bytes = unsigned;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}